@@ -5,7 +5,6 @@ import com.direwolf20.buildinggadgets2.common.blockentities.RenderBlockBE;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.blaze3d.vertex.VertexConsumer;
 import net.minecraft.client.Minecraft;
-import net.minecraft.client.color.block.BlockColors;
 import net.minecraft.client.renderer.MultiBufferSource;
 import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.block.BlockRenderDispatcher;
@@ -28,6 +27,8 @@ import java.util.BitSet;
 import java.util.List;
 
 public class RenderBlockBER implements BlockEntityRenderer<RenderBlockBE> {
+    private final ModelBlockRenderer modelBlockRenderer = new ModelBlockRenderer(Minecraft.getInstance().getBlockColors());
+
     public RenderBlockBER(BlockEntityRendererProvider.Context p_173636_) {
 
     }
@@ -55,18 +56,12 @@ public class RenderBlockBER implements BlockEntityRenderer<RenderBlockBE> {
 
         BlockRenderDispatcher blockrendererdispatcher = Minecraft.getInstance().getBlockRenderer();
         BakedModel ibakedmodel = blockrendererdispatcher.getBlockModel(renderState);
-        boolean isNormalRender = false;
-        for (Direction direction : Direction.values()) {
-            if (!ibakedmodel.getQuads(renderState, direction, RandomSource.create(), ModelData.EMPTY, null).isEmpty()) {
-                isNormalRender = true;
-                break;
-            }
-            if (!ibakedmodel.getQuads(renderState, null, RandomSource.create(), ModelData.EMPTY, null).isEmpty()) {
-                isNormalRender = true;
-            }
+        boolean isNormalRender = VBORenderer.isModelRender(renderState);
+        boolean isGrow = blockentity.renderType < 1 || blockentity.renderType > 5; //0, and the fallback for anything unknown
+        if (isGrow && isNormalRender && renderState.getFluidState().isEmpty()) { //The common case - drawn along with all the others by the batch renderer
+            ConstructionBatchRenderer.add(renderState, pos, matrixStackIn.last(), scale, 1f, combinedLightsIn);
+            return;
         }
-        BlockColors blockColors = Minecraft.getInstance().getBlockColors();
-        ModelBlockRenderer modelBlockRenderer = new ModelBlockRenderer(blockColors);
 
         if (blockentity.renderType == 0)
             renderGrow(level, pos, matrixStackIn, bufferIn, combinedLightsIn, combinedOverlayIn, scale, renderState, ibakedmodel, blockrendererdispatcher, modelBlockRenderer, isNormalRender);
@@ -1,5 +1,7 @@
 package com.direwolf20.buildinggadgets2.client.events;
 
+import com.direwolf20.buildinggadgets2.client.renderer.ConstructionBatchRenderer;
+import com.direwolf20.buildinggadgets2.client.renderer.ConstructionOverlayRenderer;
 import com.direwolf20.buildinggadgets2.client.renderer.DestructionRenderer;
 import com.direwolf20.buildinggadgets2.client.renderer.VBORenderer;
 import com.direwolf20.buildinggadgets2.common.items.BaseGadget;
@@ -8,11 +10,17 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.item.ItemStack;
 import net.minecraftforge.client.event.RenderLevelStageEvent;
+import net.minecraftforge.event.level.LevelEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 
 public class RenderLevelLast {
     @SubscribeEvent
     static void renderWorldLastEvent(RenderLevelStageEvent evt) {
+        if (evt.getStage() == RenderLevelStageEvent.Stage.AFTER_BLOCK_ENTITIES) {
+            ConstructionOverlayRenderer.render(evt);
+            ConstructionBatchRenderer.render();
+            return;
+        }
         if (evt.getStage() != RenderLevelStageEvent.Stage.AFTER_TRANSLUCENT_BLOCKS) {
             return;
         }
@@ -31,4 +39,13 @@ public class RenderLevelLast {
             VBORenderer.drawRender(evt, player, heldItem);
         }
     }
+
+    //Leaving the world (or changing dimension) - drop the cached renders, so they don't keep the old level or their GPU buffers around
+    @SubscribeEvent
+    static void onLevelUnload(LevelEvent.Unload evt) {
+        if (!evt.getLevel().isClientSide())
+            return;
+        VBORenderer.clearBuffers();
+        DestructionRenderer.clearBuffers();
+    }
 }
@@ -0,0 +1,131 @@
+package com.direwolf20.buildinggadgets2.client.renderer;
+
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.client.renderer.MultiBufferSource;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.renderer.texture.OverlayTexture;
+import net.minecraft.client.resources.model.BakedModel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.SingleThreadedRandomSource;
+import net.minecraftforge.client.model.data.ModelData;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws the grow animation of every RenderBlockBE on screen as one batch. RenderBlockBER (and ConstructionOverlayRenderer) just queue each block with its scale, and once the
+ * block entities are done we write them all out grouped by BlockState - each state's quads are looked up once (and kept until resources
+ * reload), then emitted per block with that block's own scale, alpha and light. Models with random variants (stone, grass...) are the
+ * exception, they're looked up per block with the block's own seed so the animation matches the block that replaces it.
+ */
+public class ConstructionBatchRenderer {
+    private static final Reference2ObjectMap<BlockState, List<BakedQuad>> quadCache = new Reference2ObjectOpenHashMap<>(); //Only states whose model ignores the seed
+    private static final TrackingRandomSource random = new TrackingRandomSource();
+    private static final ArrayList<BakedQuad> seededQuads = new ArrayList<>(); //Reused for the models that can't be cached
+    private static final Reference2ObjectMap<BlockState, ArrayList<Instance>> batch = new Reference2ObjectOpenHashMap<>(); //Queued this frame
+    private static final PoseStack matrix = new PoseStack();
+
+    private record Instance(BlockPos pos, Matrix4f pose, Matrix3f normal, float scale, float alpha, int light) {
+    }
+
+    /**
+     * Queues a block to be drawn this frame. The pose is copied, so the caller's PoseStack can move on.
+     */
+    public static void add(BlockState state, BlockPos pos, PoseStack.Pose pose, float scale, float alpha, int light) {
+        batch.computeIfAbsent(state, k -> new ArrayList<>()).add(new Instance(pos, new Matrix4f(pose.pose()), new Matrix3f(pose.normal()), scale, alpha, light));
+    }
+
+    /**
+     * Draws and clears everything queued this frame - called once the block entities have been rendered
+     */
+    public static void render() {
+        if (batch.isEmpty()) return;
+        ClientLevel level = Minecraft.getInstance().level;
+        if (level == null) {
+            batch.clear();
+            return;
+        }
+        BlockColors blockColors = Minecraft.getInstance().getBlockColors();
+        MultiBufferSource.BufferSource bufferSource = Minecraft.getInstance().renderBuffers().bufferSource();
+        VertexConsumer builder = bufferSource.getBuffer(RenderType.cutout());
+        for (Reference2ObjectMap.Entry<BlockState, ArrayList<Instance>> entry : batch.reference2ObjectEntrySet()) {
+            BlockState state = entry.getKey();
+            for (Instance instance : entry.getValue()) {
+                List<BakedQuad> quads = getQuads(state, instance.pos);
+                matrix.pushPose();
+                matrix.last().pose().set(instance.pose);
+                matrix.last().normal().set(instance.normal);
+                matrix.translate((1 - instance.scale) / 2, (1 - instance.scale) / 2, (1 - instance.scale) / 2);
+                matrix.scale(instance.scale, instance.scale, instance.scale);
+                for (BakedQuad quad : quads) {
+                    float red = 1f, green = 1f, blue = 1f;
+                    if (quad.isTinted()) {
+                        int color = blockColors.getColor(state, level, instance.pos, quad.getTintIndex());
+                        red = (color >> 16 & 255) / 255f;
+                        green = (color >> 8 & 255) / 255f;
+                        blue = (color & 255) / 255f;
+                    }
+                    float shade = level.getShade(quad.getDirection(), quad.isShade());
+                    builder.putBulkData(matrix.last(), quad, red * shade, green * shade, blue * shade, instance.alpha, instance.light, OverlayTexture.NO_OVERLAY, false);
+                }
+                matrix.popPose();
+            }
+        }
+        batch.clear();
+        bufferSource.endBatch(RenderType.cutout());
+    }
+
+    //Every quad of the state's model, seeded the same way ModelBlockRenderer does for this position. Looked up once per state, unless the model uses the seed
+    private static List<BakedQuad> getQuads(BlockState state, BlockPos pos) {
+        List<BakedQuad> quads = quadCache.get(state);
+        if (quads != null) return quads;
+        BakedModel ibakedmodel = Minecraft.getInstance().getBlockRenderer().getBlockModel(state);
+        long seed = state.getSeed(pos);
+        random.used = false;
+        seededQuads.clear();
+        for (Direction direction : Direction.values()) {
+            random.setSeed(seed);
+            seededQuads.addAll(ibakedmodel.getQuads(state, direction, random, ModelData.EMPTY, null));
+        }
+        random.setSeed(seed);
+        seededQuads.addAll(ibakedmodel.getQuads(state, null, random, ModelData.EMPTY, null));
+        if (random.used) //Picked a variant, so these quads are only right for this position
+            return seededQuads;
+        quads = new ArrayList<>(seededQuads);
+        quadCache.put(state, quads);
+        return quads;
+    }
+
+    /**
+     * Models get re-baked on resource reload, so drop the quads we kept
+     */
+    public static void clearCache() {
+        quadCache.clear();
+    }
+
+    //Remembers whether the model asked it for anything - if it didn't, its quads are the same for every seed
+    private static class TrackingRandomSource extends SingleThreadedRandomSource {
+        private boolean used;
+
+        private TrackingRandomSource() {
+            super(0L);
+        }
+
+        @Override
+        public int next(int bits) {
+            used = true;
+            return super.next(bits);
+        }
+    }
+}
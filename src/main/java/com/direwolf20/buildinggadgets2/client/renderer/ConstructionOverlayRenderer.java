@@ -0,0 +1,63 @@
+package com.direwolf20.buildinggadgets2.client.renderer;
+
+import com.direwolf20.buildinggadgets2.util.datatypes.ConstructionPos;
+import com.mojang.blaze3d.vertex.PoseStack;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.client.renderer.LevelRenderer;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import net.minecraftforge.client.event.RenderLevelStageEvent;
+
+import java.util.List;
+
+/**
+ * Client side of the construction overlay - holds what the server said is mid-animation, and queues it on ConstructionBatchRenderer every frame.
+ * Nothing is sent when a block finishes: shrinking ones end on their own, growing ones once the real block shows up in the world.
+ */
+public class ConstructionOverlayRenderer {
+    private static final int GRACE_TICKS = 20; //How long a grown block is kept drawn while we wait for the real block to arrive
+    private static final Long2ObjectOpenHashMap<ConstructionPos> placements = new Long2ObjectOpenHashMap<>();
+    private static ClientLevel placementLevel;
+
+    public static void add(List<ConstructionPos> newPlacements) {
+        ClientLevel level = Minecraft.getInstance().level;
+        if (level != placementLevel) { //Changed dimension or world, whatever we had is stale
+            placements.clear();
+            placementLevel = level;
+        }
+        for (ConstructionPos placement : newPlacements)
+            placements.put(placement.pos.asLong(), placement); //Replaces one that got turned around (build -> remove and back)
+    }
+
+    public static void render(RenderLevelStageEvent evt) {
+        if (placements.isEmpty()) return;
+        ClientLevel level = Minecraft.getInstance().level;
+        if (level == null || level != placementLevel) {
+            placements.clear();
+            return;
+        }
+
+        long gameTime = level.getGameTime();
+        Vec3 cameraPos = evt.getCamera().getPosition();
+        PoseStack stack = evt.getPoseStack();
+        ObjectIterator<ConstructionPos> iterator = placements.values().iterator();
+        while (iterator.hasNext()) {
+            ConstructionPos placement = iterator.next();
+            boolean done = placement.shrinking ? gameTime >= placement.getFinishTick() : !level.isEmptyBlock(placement.pos) || gameTime > placement.getFinishTick() + GRACE_TICKS;
+            if (done) {
+                iterator.remove();
+                continue;
+            }
+            float scale = placement.getSize(gameTime, evt.getPartialTick()) / ConstructionPos.MAX_SIZE;
+            if (scale <= 0 || !evt.getFrustum().isVisible(new AABB(placement.pos)))
+                continue;
+            stack.pushPose();
+            stack.translate(placement.pos.getX() - cameraPos.x, placement.pos.getY() - cameraPos.y, placement.pos.getZ() - cameraPos.z);
+            ConstructionBatchRenderer.add(placement.state, placement.pos, stack.last(), scale, 1f, LevelRenderer.getLightColor(level, placement.pos));
+            stack.popPose();
+        }
+    }
+}
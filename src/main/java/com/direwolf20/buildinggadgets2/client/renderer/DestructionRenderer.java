@@ -5,10 +5,12 @@ import com.direwolf20.buildinggadgets2.util.BuildingUtils;
 import com.direwolf20.buildinggadgets2.util.GadgetNBT;
 import com.direwolf20.buildinggadgets2.util.GadgetUtils;
 import com.direwolf20.buildinggadgets2.util.VectorHelper;
+import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferBuilder;
 import com.mojang.blaze3d.vertex.PoseStack;
-import com.mojang.blaze3d.vertex.VertexConsumer;
+import com.mojang.blaze3d.vertex.VertexBuffer;
 import net.minecraft.client.Minecraft;
-import net.minecraft.client.renderer.MultiBufferSource;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.world.entity.player.Player;
@@ -18,8 +20,21 @@ import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.phys.BlockHitResult;
 import net.minecraft.world.phys.Vec3;
 import net.minecraftforge.client.event.RenderLevelStageEvent;
+import org.joml.Matrix4f;
+
+import java.util.ArrayList;
 
 public class DestructionRenderer {
+    private static final int REFRESH_TICKS = 10; //The client gets no event when blocks change, so an unchanged area is still re-scanned this often
+    private static final BufferBuilder builder = new BufferBuilder(OurRenderTypes.MissingBlockOverlay.bufferSize());
+    private static VertexBuffer vertexBuffer; //Created on first use, and closed again when leaving the world
+    private static AreaKey areaCache; //What the vertex buffer currently holds
+    private static boolean hasBoxes = false;
+
+    //Everything the overlay depends on - if none of it changed, neither did the overlay
+    private record AreaKey(Level level, BlockPos start, Direction facing, Direction playerFacing, boolean mayBuild, int depth, int left, int right, int up, int down, boolean affectTiles, int drawCount, long epoch) {
+    }
+
     public static void render(RenderLevelStageEvent evt, Player player, ItemStack gadget) {
         //if (!GadgetDestruction.getOverlay(gadget)) //TODO
         //    return;
@@ -37,26 +52,61 @@ public class DestructionRenderer {
         if (level.getBlockState(startBlock) == Registration.RenderBlock.get().defaultBlockState())
             return;
 
-        Vec3 playerPos = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
+        final int energyCost = BuildingUtils.getEnergyCost(gadget);
+        int drawCount = (player.isCreative() || energyCost <= 0) ? Integer.MAX_VALUE : Math.max(0, BuildingUtils.getEnergyStored(gadget) / energyCost); //How many boxes we have the energy to destroy
+        AreaKey areaKey = new AreaKey(level, startBlock, facing, player.getDirection(), player.mayBuild(), GadgetNBT.getToolValue(gadget, "depth"),
+                GadgetNBT.getToolValue(gadget, "left"), GadgetNBT.getToolValue(gadget, "right"), GadgetNBT.getToolValue(gadget, "up"), GadgetNBT.getToolValue(gadget, "down"),
+                GadgetNBT.getSetting(gadget, "affecttiles"), drawCount, level.getGameTime() / REFRESH_TICKS);
+        if (!areaKey.equals(areaCache)) {
+            buildOverlay(GadgetUtils.getDestructionArea(level, startBlock, facing, player, gadget), startBlock, drawCount);
+            areaCache = areaKey;
+        }
+        if (!hasBoxes)
+            return;
 
+        Vec3 playerPos = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
         PoseStack stack = evt.getPoseStack();
         stack.pushPose();
-        stack.translate(-playerPos.x(), -playerPos.y(), -playerPos.z());
+        stack.translate(startBlock.getX() - playerPos.x(), startBlock.getY() - playerPos.y(), startBlock.getZ() - playerPos.z());
+        OurRenderTypes.MissingBlockOverlay.setupRenderState();
+        vertexBuffer.bind();
+        vertexBuffer.drawWithShader(stack.last().pose(), new Matrix4f(evt.getProjectionMatrix()), RenderSystem.getShader());
+        VertexBuffer.unbind();
+        OurRenderTypes.MissingBlockOverlay.clearRenderState();
+        stack.popPose();
+    }
 
-        MultiBufferSource.BufferSource buffer = Minecraft.getInstance().renderBuffers().bufferSource();
-        VertexConsumer builder = buffer.getBuffer(OurRenderTypes.MissingBlockOverlay);
-        final int[] counter = {BuildingUtils.getEnergyStored(gadget)};
-        final int energyCost = BuildingUtils.getEnergyCost(gadget);
-        //Todo More Efficient for more FPS, consider a VBO?
-        GadgetUtils.getDestructionArea(level, startBlock, facing, player, gadget)
-                .forEach(pos -> {
-                    if (counter[0] >= energyCost || player.isCreative())
-                        MyRenderMethods.renderBoxSolid(stack.last().pose(), builder, pos.pos, 1, 0, 0, 0.35f);
-                    counter[0] -= energyCost;
-                });
+    /**
+     * Builds the boxes relative to startBlock and uploads them, so they only get drawn (not rebuilt) every frame
+     */
+    private static void buildOverlay(ArrayList<StatePos> destructionArea, BlockPos startBlock, int drawCount) {
+        builder.begin(OurRenderTypes.MissingBlockOverlay.mode(), OurRenderTypes.MissingBlockOverlay.format());
+        Matrix4f matrix = new Matrix4f();
+        int boxes = Math.min(drawCount, destructionArea.size());
+        for (int i = 0; i < boxes; i++)
+            MyRenderMethods.renderBoxSolid(matrix, builder, destructionArea.get(i).pos.subtract(startBlock), 1, 0, 0, 0.35f);
+        BufferBuilder.RenderedBuffer renderedBuffer = builder.end();
+        hasBoxes = !renderedBuffer.isEmpty();
+        if (!hasBoxes) {
+            renderedBuffer.release();
+            return;
+        }
+        if (vertexBuffer == null)
+            vertexBuffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+        vertexBuffer.bind();
+        vertexBuffer.upload(renderedBuffer);
+        VertexBuffer.unbind();
+    }
 
-        stack.popPose();
-        //RenderSystem.disableDepthTest();
-        buffer.endBatch(); // @mcp: draw = finish
+    /**
+     * Forgets the cached area (which holds on to the level) and frees the vertex buffer - called when the level unloads
+     */
+    public static void clearBuffers() {
+        areaCache = null;
+        hasBoxes = false;
+        if (vertexBuffer != null) {
+            vertexBuffer.close();
+            vertexBuffer = null;
+        }
     }
 }
@@ -0,0 +1,145 @@
+package com.direwolf20.buildinggadgets2.client.renderer;
+
+import com.direwolf20.buildinggadgets2.util.FakeRenderingWorld;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.BlockAndTintGetter;
+import net.minecraft.world.level.ColorResolver;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.level.material.FluidState;
+
+import javax.annotation.Nullable;
+
+/**
+ * Everything meshing one preview section reads from the world, copied on the render thread before the section is handed to a worker -
+ * the fake world's states, the light and the block entities, for the section plus a one block border. Positions are relative to the render,
+ * the same as the section's blocks. Workers only ever read this, never the live level.
+ */
+public class SectionSnapshot implements BlockAndTintGetter {
+    private static final int SIZE = 16 + 2; //The section and a block either side
+    private final int originX, originY, originZ; //The lowest corner, border included
+    private final BlockState[] states = new BlockState[SIZE * SIZE * SIZE];
+    private final byte[] skyLight = new byte[SIZE * SIZE * SIZE];
+    private final byte[] blockLight = new byte[SIZE * SIZE * SIZE];
+    private final Long2ObjectMap<BlockEntity> blockEntities = new Long2ObjectOpenHashMap<>();
+    private final ClientLevel tintLevel; //Only for its biome tint cache, which vanilla's section renderer reads from its workers too
+    private final BlockPos renderPos;
+    private final boolean constantAmbientLight;
+    private final int minBuildHeight, height;
+
+    public SectionSnapshot(Level level, FakeRenderingWorld fakeRenderingWorld, BlockPos renderPos, long sectionKey) {
+        this.originX = SectionPos.sectionToBlockCoord(SectionPos.x(sectionKey)) - 1;
+        this.originY = SectionPos.sectionToBlockCoord(SectionPos.y(sectionKey)) - 1;
+        this.originZ = SectionPos.sectionToBlockCoord(SectionPos.z(sectionKey)) - 1;
+        this.tintLevel = level instanceof ClientLevel clientLevel ? clientLevel : null;
+        this.renderPos = renderPos;
+        this.constantAmbientLight = tintLevel != null && tintLevel.effects().constantAmbientLight();
+        this.minBuildHeight = level.getMinBuildHeight();
+        this.height = level.getHeight();
+
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        BlockPos.MutableBlockPos lightPos = new BlockPos.MutableBlockPos();
+        for (int z = 0; z < SIZE; z++) {
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    int index = x + SIZE * (y + SIZE * z);
+                    pos.set(originX + x, originY + y, originZ + z);
+                    BlockState state = fakeRenderingWorld.getBlockState(pos);
+                    states[index] = state;
+                    //Lit the way the preview always has been - from 255 blocks above where it's drawn, so it doesn't go dark underground
+                    lightPos.set(pos.getX() + renderPos.getX(), pos.getY() + renderPos.getY() + 255, pos.getZ() + renderPos.getZ());
+                    skyLight[index] = (byte) level.getBrightness(LightLayer.SKY, lightPos);
+                    blockLight[index] = (byte) level.getBrightness(LightLayer.BLOCK, lightPos);
+                    if (state.hasBlockEntity() && VBORenderer.isModelRender(state)) { //Blocks without a model are drawn by their renderer, not meshed
+                        BlockEntity blockEntity = fakeRenderingWorld.getBlockEntity(pos);
+                        if (blockEntity != null)
+                            blockEntities.put(pos.asLong(), blockEntity);
+                    }
+                }
+            }
+        }
+    }
+
+    //The index of pos in the arrays, or -1 if it's outside the snapshot
+    private int indexOf(BlockPos pos) {
+        int x = pos.getX() - originX, y = pos.getY() - originY, z = pos.getZ() - originZ;
+        if (x < 0 || y < 0 || z < 0 || x >= SIZE || y >= SIZE || z >= SIZE)
+            return -1;
+        return x + SIZE * (y + SIZE * z);
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        int index = indexOf(pos);
+        return index < 0 ? Blocks.AIR.defaultBlockState() : states[index];
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        return getBlockState(pos).getFluidState();
+    }
+
+    @Nullable
+    @Override
+    public BlockEntity getBlockEntity(BlockPos pos) {
+        return blockEntities.get(pos.asLong());
+    }
+
+    @Override
+    public int getBrightness(LightLayer lightLayer, BlockPos pos) {
+        int index = indexOf(pos);
+        if (index < 0) return 0;
+        return lightLayer == LightLayer.SKY ? skyLight[index] : blockLight[index];
+    }
+
+    @Override
+    public int getRawBrightness(BlockPos pos, int amount) {
+        return Math.max(getBrightness(LightLayer.BLOCK, pos), getBrightness(LightLayer.SKY, pos) - amount);
+    }
+
+    /**
+     * There's no light engine to hand out - the light we copied is answered by getBrightness and getRawBrightness
+     */
+    @Override
+    public LevelLightEngine getLightEngine() {
+        return null;
+    }
+
+    @Override
+    public int getBlockTint(BlockPos pos, ColorResolver colorResolver) {
+        if (tintLevel == null) return -1;
+        return tintLevel.getBlockTint(pos.offset(renderPos), colorResolver);
+    }
+
+    @Override
+    public float getShade(Direction direction, boolean shade) {
+        if (!shade) {
+            return constantAmbientLight ? 0.9F : 1.0F;
+        }
+        return switch (direction) {
+            case DOWN -> constantAmbientLight ? 0.9F : 0.5F;
+            case UP -> constantAmbientLight ? 0.9F : 1.0F;
+            case NORTH, SOUTH -> 0.8F;
+            case WEST, EAST -> 0.6F;
+        };
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMinBuildHeight() {
+        return minBuildHeight;
+    }
+}
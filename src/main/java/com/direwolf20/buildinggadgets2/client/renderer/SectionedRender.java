@@ -0,0 +1,529 @@
+package com.direwolf20.buildinggadgets2.client.renderer;
+
+import com.direwolf20.buildinggadgets2.common.items.BaseGadget;
+import com.direwolf20.buildinggadgets2.util.FakeRenderingWorld;
+import com.direwolf20.buildinggadgets2.util.GadgetNBT;
+import com.direwolf20.buildinggadgets2.util.datatypes.BlockBuffer;
+import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.*;
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.shorts.ShortArrayList;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.block.BlockRenderDispatcher;
+import net.minecraft.client.renderer.block.ModelBlockRenderer;
+import net.minecraft.client.renderer.texture.OverlayTexture;
+import net.minecraft.client.resources.model.BakedModel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.phys.shapes.Shapes;
+import net.minecraftforge.client.model.data.ModelData;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.slf4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * A preview mesh split into 16x16x16 sections, the same way vanilla's section renderer splits the world. Each section is tesselated on a
+ * worker thread into its own buffers, then uploaded on the render thread as it finishes - so a big preview doesn't stall a frame anymore.
+ * The previous mesh keeps drawing until every section of the new one is uploaded, then they're swapped.
+ * Vertices are relative to the render position, so when a rebuild only moves the anchor, any section whose blocks (and their neighbour
+ * adjusted states) came out the same is kept as is, and only the sections that actually changed get meshed again.
+ */
+public class SectionedRender {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "BuildingGadgets2-Mesher-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    //The order we draw the render types in
+    private static final List<RenderType> DRAW_ORDER = List.of(RenderType.solid(), RenderType.cutout(), RenderType.cutoutMipped(), RenderType.translucent(), RenderType.tripwire());
+
+    private static final float RESORT_DISTANCE = 1; //How far the camera has to move before the quads get sorted again, same as vanilla's translucent re-sort
+
+    private Long2ObjectMap<Section> sections = new Long2ObjectOpenHashMap<>(); //What we're drawing
+    private Long2ObjectMap<Section> building = new Long2ObjectOpenHashMap<>(); //The mesh being built, swapped in once it's complete
+    //Sets of builders a section is tesselated into - up to one per worker, handed back once the section built with it is uploaded (like vanilla's ChunkBufferBuilderPack).
+    //Each render has its own, so one that isn't being drawn (like the Template Manager's once it's closed) can't hold on to the packs another one needs
+    private final ArrayDeque<Map<RenderType, DireBufferBuilder>> freePacks = new ArrayDeque<>();
+    private int packCount = 0;
+    private final ArrayDeque<SectionTask> pending = new ArrayDeque<>(); //Sections waiting for a free pack
+    private final ConcurrentLinkedQueue<CompiledSection> compiled = new ConcurrentLinkedQueue<>(); //Sections the workers are done with
+    private final ConcurrentLinkedQueue<SortResult> sorted = new ConcurrentLinkedQueue<>(); //Re-sorts the workers are done with
+    private int generation = 0;
+    private int remaining = 0;
+    private boolean sorting = false; //Whether a re-sort is running - we only ever have one at a time
+    private Vector3f sortPos = new Vector3f(); //Where the camera was, relative to the render, when the drawn sections were last sorted
+    private Vector3f cameraPos = new Vector3f(); //Where it is now, used to order the sections
+
+    private static class Section {
+        private final Vector3f center;
+        private final SectionBlocks blocks; //What this section was meshed from, to tell if a rebuild can reuse it
+        private final MeshSettings settings;
+        private final Map<RenderType, VertexBuffer> vertexBuffers = new HashMap<>();
+        private final Map<RenderType, BufferBuilder.SortState> sortStates = new HashMap<>();
+
+        private Section(SectionTask task) {
+            this.center = new Vector3f(SectionPos.x(task.key) * 16 + 8, SectionPos.y(task.key) * 16 + 8, SectionPos.z(task.key) * 16 + 8);
+            this.blocks = task.blocks;
+            this.settings = task.tesselator.settings;
+        }
+
+        //Whether meshing these blocks would come out exactly like this section did
+        private boolean matches(SectionBlocks blocks, Tesselator tesselator) {
+            return settings.equals(tesselator.settings) && this.blocks.equals(blocks);
+        }
+
+        private boolean closed = false;
+
+        private void close() {
+            vertexBuffers.values().forEach(VertexBuffer::close);
+            closed = true;
+        }
+    }
+
+    //The blocks of one section, bucketed straight from the source - no object per block, just their position in the section and their states
+    private static class SectionBlocks {
+        private final ShortArrayList positions = new ShortArrayList(); //x | y << 4 | z << 8, within the section
+        private final ObjectArrayList<BlockState> states = new ObjectArrayList<>();
+        private final ObjectArrayList<BlockState> renderStates = new ObjectArrayList<>(); //After the fake world's neighbour shape updates
+
+        private void add(BlockPos pos, BlockState state, BlockState renderState) {
+            positions.add((short) ((pos.getX() & 15) | (pos.getY() & 15) << 4 | (pos.getZ() & 15) << 8));
+            states.add(state);
+            renderStates.add(renderState);
+        }
+
+        private int size() {
+            return positions.size();
+        }
+
+        private BlockPos.MutableBlockPos getPos(int index, long sectionKey, BlockPos.MutableBlockPos pos) {
+            short local = positions.getShort(index);
+            return pos.set(SectionPos.sectionToBlockCoord(SectionPos.x(sectionKey)) + (local & 15), SectionPos.sectionToBlockCoord(SectionPos.y(sectionKey)) + (local >> 4 & 15), SectionPos.sectionToBlockCoord(SectionPos.z(sectionKey)) + (local >> 8 & 15));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof SectionBlocks other && positions.equals(other.positions) && states.equals(other.states) && renderStates.equals(other.renderStates);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(positions, states, renderStates);
+        }
+    }
+
+    //Everything besides the blocks themselves that changes what a section meshes into
+    private record MeshSettings(Level level, float transparency, boolean isExchanging) {
+    }
+
+    private record SectionTask(long key, SectionBlocks blocks, Tesselator tesselator) {
+    }
+
+    private record CompiledSection(int generation, SectionTask task, Map<RenderType, DireBufferBuilder> pack, Map<RenderType, BufferBuilder.RenderedBuffer> buffers, Map<RenderType, BufferBuilder.SortState> sortStates) {
+    }
+
+    private record SortTask(Section section, RenderType renderType, BufferBuilder.SortState sortState) {
+    }
+
+    //A re-sorted layer - the rendered buffer only holds indices
+    private record SortedLayer(Section section, RenderType renderType, BufferBuilder.RenderedBuffer buffer, BufferBuilder.SortState sortState) {
+    }
+
+    private record SortResult(Map<RenderType, DireBufferBuilder> pack, List<SortedLayer> layers) {
+    }
+
+    /**
+     * Groups the blocks into sections and queues each one that changed for meshing - anything still queued or building from a previous call is dropped.
+     * The blocks' positions are relative to renderPos, and so are the vertices.
+     */
+    public void rebuild(Level level, FakeRenderingWorld fakeRenderingWorld, BlockPos renderPos, ItemStack gadget, float transparency, Vector3f cameraPos, Iterable<StatePos> blocks) {
+        Long2ObjectMap<SectionBlocks> blocksBySection = new Long2ObjectOpenHashMap<>();
+        for (StatePos statePos : blocks)
+            addBlock(blocksBySection, fakeRenderingWorld, statePos.pos, statePos.state);
+        rebuild(level, fakeRenderingWorld, renderPos, gadget, transparency, cameraPos, blocksBySection);
+    }
+
+    /**
+     * Same as above, reading the blocks straight from a copy/paste buffer
+     */
+    public void rebuild(Level level, FakeRenderingWorld fakeRenderingWorld, BlockPos renderPos, ItemStack gadget, float transparency, Vector3f cameraPos, BlockBuffer blockBuffer) {
+        Long2ObjectMap<SectionBlocks> blocksBySection = new Long2ObjectOpenHashMap<>();
+        BlockBuffer.Cursor cursor = blockBuffer.cursor();
+        while (cursor.next())
+            addBlock(blocksBySection, fakeRenderingWorld, cursor.pos(), cursor.state());
+        rebuild(level, fakeRenderingWorld, renderPos, gadget, transparency, cameraPos, blocksBySection);
+    }
+
+    private static void addBlock(Long2ObjectMap<SectionBlocks> blocksBySection, FakeRenderingWorld fakeRenderingWorld, BlockPos pos, BlockState state) {
+        if (state.isAir()) return;
+        long key = SectionPos.asLong(SectionPos.blockToSectionCoord(pos.getX()), SectionPos.blockToSectionCoord(pos.getY()), SectionPos.blockToSectionCoord(pos.getZ()));
+        blocksBySection.computeIfAbsent(key, k -> new SectionBlocks()).add(pos, state, fakeRenderingWorld.getBlockStateWithoutReal(pos));
+    }
+
+    private void rebuild(Level level, FakeRenderingWorld fakeRenderingWorld, BlockPos renderPos, ItemStack gadget, float transparency, Vector3f cameraPos, Long2ObjectMap<SectionBlocks> blocksBySection) {
+        generation++;
+        pending.clear();
+        Long2ObjectMap<Section> previous = building; //Sections already uploaded for a rebuild we're replacing can be reused too
+        building = new Long2ObjectOpenHashMap<>();
+        this.cameraPos = cameraPos;
+
+        Tesselator tesselator = new Tesselator(level, fakeRenderingWorld, renderPos, gadget, transparency);
+        for (Long2ObjectMap.Entry<SectionBlocks> entry : blocksBySection.long2ObjectEntrySet()) {
+            SectionBlocks sectionBlocks = entry.getValue();
+            Section existing = previous.get(entry.getLongKey());
+            if (existing == null || !existing.matches(sectionBlocks, tesselator))
+                existing = sections.get(entry.getLongKey());
+            if (existing != null && existing.matches(sectionBlocks, tesselator))
+                building.put(entry.getLongKey(), existing); //Nothing in here changed, the anchor just moved
+            else
+                pending.add(new SectionTask(entry.getLongKey(), sectionBlocks, tesselator));
+        }
+        closeUnused(previous, building, sections);
+        remaining = pending.size();
+        if (remaining == 0)
+            swap();
+        submitPending();
+    }
+
+    /**
+     * Uploads whatever the workers finished since last frame, and hands out the freed packs to sections still waiting. Call every frame, on the render thread.
+     */
+    public void uploadCompleted() {
+        CompiledSection compiledSection;
+        while ((compiledSection = compiled.poll()) != null) {
+            if (compiledSection.generation != generation) { //Built for a mesh that's since been replaced
+                compiledSection.buffers.values().forEach(BufferBuilder.RenderedBuffer::release);
+            } else {
+                Section section = new Section(compiledSection.task);
+                for (Map.Entry<RenderType, BufferBuilder.RenderedBuffer> entry : compiledSection.buffers.entrySet()) {
+                    VertexBuffer vertexBuffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+                    vertexBuffer.bind();
+                    vertexBuffer.upload(entry.getValue()); //Releases the rendered buffer
+                    VertexBuffer.unbind();
+                    section.vertexBuffers.put(entry.getKey(), vertexBuffer);
+                }
+                section.sortStates.putAll(compiledSection.sortStates);
+                building.put(compiledSection.task.key, section);
+                if (--remaining == 0)
+                    swap();
+            }
+            freePacks.add(compiledSection.pack);
+        }
+        SortResult sortResult;
+        while ((sortResult = sorted.poll()) != null) {
+            for (SortedLayer layer : sortResult.layers) {
+                if (layer.section.closed) { //Swapped out while it was being sorted
+                    layer.buffer.release();
+                    continue;
+                }
+                VertexBuffer vertexBuffer = layer.section.vertexBuffers.get(layer.renderType);
+                vertexBuffer.bind();
+                vertexBuffer.upload(layer.buffer); //Index only, so the vertices stay as they are
+                VertexBuffer.unbind();
+                layer.section.sortStates.put(layer.renderType, layer.sortState);
+            }
+            freePacks.add(sortResult.pack);
+            sorting = false;
+        }
+        submitPending();
+    }
+
+    private void swap() {
+        closeUnused(sections, building, building);
+        sections = building;
+        building = new Long2ObjectOpenHashMap<>();
+    }
+
+    //Closes the sections that aren't carried over into either of the other maps
+    private static void closeUnused(Long2ObjectMap<Section> toClose, Long2ObjectMap<Section> keep, Long2ObjectMap<Section> alsoKeep) {
+        for (Long2ObjectMap.Entry<Section> entry : toClose.long2ObjectEntrySet()) {
+            if (keep.get(entry.getLongKey()) != entry.getValue() && alsoKeep.get(entry.getLongKey()) != entry.getValue())
+                entry.getValue().close();
+        }
+    }
+
+    private void submitPending() {
+        while (!pending.isEmpty()) {
+            Map<RenderType, DireBufferBuilder> pack = getFreePack();
+            if (pack == null) return; //Every pack is in use, we'll pick up where we left off once one comes back
+            SectionTask task = pending.poll();
+            int taskGeneration = generation;
+            Vector3f taskSortPos = new Vector3f(cameraPos);
+            SectionSnapshot snapshot = task.tesselator.snapshot(task.key); //Read the world here on the render thread, the worker only gets the copy
+            EXECUTOR.execute(() -> {
+                CompiledSection compiledSection = null;
+                try {
+                    compiledSection = compile(taskGeneration, task, snapshot, pack, taskSortPos);
+                } finally { //Whatever happens the pack has to come back, and the section has to count as done or the mesh never gets swapped in
+                    if (compiledSection == null) {
+                        resetPack(pack);
+                        compiledSection = new CompiledSection(taskGeneration, task, pack, Map.of(), Map.of());
+                    }
+                    compiled.add(compiledSection);
+                }
+            });
+        }
+    }
+
+    private Map<RenderType, DireBufferBuilder> getFreePack() {
+        Map<RenderType, DireBufferBuilder> pack = freePacks.poll();
+        if (pack == null && packCount < THREADS) {
+            pack = createPack();
+            packCount++;
+        }
+        return pack;
+    }
+
+    /**
+     * Runs on a worker thread - tesselates one section into the pack and ends each builder it used
+     */
+    private static CompiledSection compile(int generation, SectionTask task, SectionSnapshot snapshot, Map<RenderType, DireBufferBuilder> pack, Vector3f sortPos) {
+        Map<RenderType, BufferBuilder.RenderedBuffer> buffers = new HashMap<>();
+        Map<RenderType, BufferBuilder.SortState> sortStates = new HashMap<>();
+        try {
+            task.tesselator.tesselate(task.key, task.blocks, snapshot, pack);
+        } catch (Exception e) {
+            LOGGER.error("Failed to mesh a Building Gadgets preview section", e);
+        }
+        try {
+            for (Map.Entry<RenderType, DireBufferBuilder> entry : pack.entrySet()) {
+                DireBufferBuilder direBufferBuilder = entry.getValue();
+                if (!direBufferBuilder.building()) continue;
+                direBufferBuilder.setQuadSorting(VertexSorting.byDistance(sortPos));
+                BufferBuilder.SortState sortState = direBufferBuilder.getSortState();
+                BufferBuilder.RenderedBuffer renderedBuffer = direBufferBuilder.end();
+                if (renderedBuffer.isEmpty()) {
+                    renderedBuffer.release();
+                    continue;
+                }
+                buffers.put(entry.getKey(), renderedBuffer);
+                sortStates.put(entry.getKey(), sortState);
+            }
+        } catch (Exception e) { //Don't hand back half a section
+            LOGGER.error("Failed to finish a Building Gadgets preview section", e);
+            buffers.values().forEach(BufferBuilder.RenderedBuffer::release);
+            buffers.clear();
+            sortStates.clear();
+            resetPack(pack);
+        }
+        return new CompiledSection(generation, task, pack, buffers, sortStates);
+    }
+
+    /**
+     * Called every frame with the camera position relative to the render. Once the camera has moved far enough since the last sort, the drawn
+     * sections' quads are re-sorted from their saved SortStates on a worker, and only the index buffers get uploaded when it's done.
+     */
+    public void sortIfMoved(Vector3f cameraPos) {
+        this.cameraPos = cameraPos;
+        if (sorting || !pending.isEmpty() || cameraPos.distanceSquared(sortPos) < RESORT_DISTANCE * RESORT_DISTANCE)
+            return; //Meshing gets the workers first
+        List<SortTask> tasks = new ArrayList<>();
+        for (Section section : sections.values()) {
+            for (Map.Entry<RenderType, BufferBuilder.SortState> entry : section.sortStates.entrySet())
+                tasks.add(new SortTask(section, entry.getKey(), entry.getValue()));
+        }
+        if (tasks.isEmpty()) {
+            sortPos = new Vector3f(cameraPos);
+            return;
+        }
+        Map<RenderType, DireBufferBuilder> pack = getFreePack();
+        if (pack == null) return; //Try again next frame
+        sortPos = new Vector3f(cameraPos);
+        sorting = true;
+        Vector3f taskSortPos = sortPos;
+        EXECUTOR.execute(() -> {
+            SortResult sortResult = null;
+            try {
+                sortResult = sort(tasks, pack, taskSortPos);
+            } finally { //Always hand the pack back, and let the next sort run
+                if (sortResult == null) {
+                    resetPack(pack);
+                    sortResult = new SortResult(pack, List.of());
+                }
+                sorted.add(sortResult);
+            }
+        });
+    }
+
+    /**
+     * Runs on a worker thread - sorts each layer's quads into a new index buffer, reusing the vertices already on the GPU
+     */
+    private static SortResult sort(List<SortTask> tasks, Map<RenderType, DireBufferBuilder> pack, Vector3f sortPos) {
+        List<SortedLayer> layers = new ArrayList<>(tasks.size());
+        try {
+            for (SortTask task : tasks) {
+                DireBufferBuilder bufferBuilder = pack.get(task.renderType);
+                bufferBuilder.begin(task.renderType.mode(), task.renderType.format());
+                bufferBuilder.restoreSortState(task.sortState);
+                bufferBuilder.setQuadSorting(VertexSorting.byDistance(sortPos));
+                BufferBuilder.SortState sortState = bufferBuilder.getSortState();
+                layers.add(new SortedLayer(task.section, task.renderType, bufferBuilder.end(), sortState));
+            }
+        } catch (Exception e) { //The sections keep their current order, we'll sort again once the camera moves
+            LOGGER.error("Failed to sort a Building Gadgets preview", e);
+            layers.forEach(layer -> layer.buffer.release());
+            layers.clear();
+            resetPack(pack);
+        }
+        return new SortResult(pack, layers);
+    }
+
+    /**
+     * Draws the sections closest first - DireBufferBuilder sorts the quads within a section the same way
+     */
+    public void draw(Matrix4f pose, Matrix4f projection) {
+        if (sections.isEmpty()) return;
+        List<Section> drawList = new ArrayList<>(sections.values());
+        drawList.sort(Comparator.comparingDouble(section -> section.center.distanceSquared(cameraPos)));
+        try {
+            for (RenderType renderType : DRAW_ORDER) {
+                RenderType drawRenderType;
+                if (renderType.equals(RenderType.cutout()))
+                    drawRenderType = OurRenderTypes.RenderBlock;
+                else
+                    drawRenderType = RenderType.translucent();
+                drawRenderType.setupRenderState();
+                for (Section section : drawList) {
+                    VertexBuffer vertexBuffer = section.vertexBuffers.get(renderType);
+                    if (vertexBuffer == null) continue;
+                    vertexBuffer.bind();
+                    vertexBuffer.drawWithShader(pose, projection, RenderSystem.getShader());
+                }
+                VertexBuffer.unbind();
+                drawRenderType.clearRenderState();
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to draw a Building Gadgets preview", e);
+        }
+    }
+
+    public void close() { //Prevents leaks
+        generation++;
+        pending.clear();
+        remaining = 0;
+        closeUnused(building, sections, sections);
+        building = new Long2ObjectOpenHashMap<>();
+        sections.values().forEach(Section::close);
+        sections = new Long2ObjectOpenHashMap<>();
+        //Take back what the workers already finished - anything still running comes back with an old generation (or a closed section), and is released the next time we upload or close
+        CompiledSection compiledSection;
+        while ((compiledSection = compiled.poll()) != null) {
+            compiledSection.buffers.values().forEach(BufferBuilder.RenderedBuffer::release);
+            freePacks.add(compiledSection.pack);
+        }
+        SortResult sortResult;
+        while ((sortResult = sorted.poll()) != null) {
+            sortResult.layers.forEach(layer -> layer.buffer.release());
+            freePacks.add(sortResult.pack);
+            sorting = false;
+        }
+    }
+
+    //Ends whatever a failed task left half built, so the pack can be handed out again
+    private static void resetPack(Map<RenderType, DireBufferBuilder> pack) {
+        for (DireBufferBuilder bufferBuilder : pack.values()) {
+            try {
+                if (bufferBuilder.building())
+                    bufferBuilder.end().release();
+            } catch (Exception e) {
+                LOGGER.error("Failed to reset a Building Gadgets preview buffer", e);
+            }
+        }
+    }
+
+    private static Map<RenderType, DireBufferBuilder> createPack() {
+        return RenderType.chunkBufferLayers().stream().collect(Collectors.toMap((renderType) -> renderType, (type) -> new DireBufferBuilder(type.bufferSize())));
+    }
+
+    /**
+     * Everything tesselating a block needs. Shared by every section of a rebuild - the world is only read on the render thread, when snapshot()
+     * copies it for a section, and the workers tesselate from that copy.
+     */
+    private static class Tesselator {
+        private final Level level;
+        private final FakeRenderingWorld fakeRenderingWorld;
+        private final BlockPos renderPos;
+        private final float transparency;
+        private final boolean isExchanging;
+        private final MeshSettings settings;
+
+        private Tesselator(Level level, FakeRenderingWorld fakeRenderingWorld, BlockPos renderPos, ItemStack gadget, float transparency) {
+            this.level = level;
+            this.fakeRenderingWorld = fakeRenderingWorld;
+            this.renderPos = renderPos;
+            this.transparency = transparency;
+            this.isExchanging = gadget.getItem() instanceof BaseGadget && GadgetNBT.getMode(gadget).isExchanging;
+            this.settings = new MeshSettings(level, transparency, isExchanging);
+        }
+
+        //Render thread only
+        private SectionSnapshot snapshot(long sectionKey) {
+            return new SectionSnapshot(level, fakeRenderingWorld, renderPos, sectionKey);
+        }
+
+        private void tesselate(long sectionKey, SectionBlocks blocks, SectionSnapshot snapshot, Map<RenderType, DireBufferBuilder> pack) {
+            PoseStack matrix = new PoseStack(); //Create a new matrix stack for use in the buffer building process
+            BlockRenderDispatcher dispatcher = Minecraft.getInstance().getBlockRenderer();
+            ModelBlockRenderer modelBlockRenderer = dispatcher.getModelRenderer();
+            RandomSource random = RandomSource.create();
+            BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+            BlockPos.MutableBlockPos realPos = new BlockPos.MutableBlockPos();
+            //Iterate through the blocks and start drawing to the builders - skip modelRenders(like chests) - include fluids (even though they don't work yet)
+            for (int i = 0; i < blocks.size(); i++) {
+                BlockState state = blocks.states.get(i);
+                if (!VBORenderer.isModelRender(state) && state.getFluidState().isEmpty()) continue;
+                BlockState renderState = blocks.renderStates.get(i);
+                if (renderState.isAir()) continue;
+                blocks.getPos(i, sectionKey, pos);
+                realPos.setWithOffset(pos, renderPos);
+
+                BakedModel ibakedmodel = dispatcher.getBlockModel(renderState);
+                matrix.pushPose();
+                matrix.translate(pos.getX(), pos.getY(), pos.getZ());
+                if (isExchanging) {
+                    matrix.translate(-0.0005f, -0.0005f, -0.0005f); //For Exchanger
+                    matrix.scale(1.001f, 1.001f, 1.001f); //For Exchanger
+                }
+
+                for (RenderType renderType : ibakedmodel.getRenderTypes(renderState, random, ModelData.EMPTY)) {
+                    //Flowers render weirdly so we use a custom renderer to make them look better. Glass and Flowers are both cutouts, so we only want this for non-cube blocks
+                    if (renderType.equals(RenderType.cutout()) && renderState.getShape(snapshot, pos).equals(Shapes.block()))
+                        renderType = RenderType.translucent();
+                    DireBufferBuilder buffer = pack.get(renderType);
+                    if (!buffer.building())
+                        buffer.begin(renderType.mode(), renderType.format());
+                    DireVertexConsumer direVertexConsumer = new DireVertexConsumer(buffer, transparency);
+                    //Use tesselateBlock to skip the block.isModel check - this helps render Create blocks that are both models AND animated
+                    if (renderState.getFluidState().isEmpty()) {
+                        try {
+                            modelBlockRenderer.tesselateBlock(snapshot, ibakedmodel, renderState, pos, matrix, direVertexConsumer, false, random, renderState.getSeed(realPos), OverlayTexture.NO_OVERLAY, ibakedmodel.getModelData(snapshot, pos, renderState, ModelData.EMPTY), renderType);
+                        } catch (Exception e) {
+                            //System.out.println(e);
+                        }
+                    } else
+                        RenderFluidBlock.renderFluidBlock(renderState, snapshot, pos, matrix, direVertexConsumer, false);
+                }
+                matrix.popPose();
+            }
+        }
+    }
+}
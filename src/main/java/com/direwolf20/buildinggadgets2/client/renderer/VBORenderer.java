@@ -4,17 +4,17 @@ import com.direwolf20.buildinggadgets2.common.items.*;
 import com.direwolf20.buildinggadgets2.common.worlddata.BG2DataClient;
 import com.direwolf20.buildinggadgets2.setup.Registration;
 import com.direwolf20.buildinggadgets2.util.*;
+import com.direwolf20.buildinggadgets2.util.datatypes.BlockBuffer;
 import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
 import com.direwolf20.buildinggadgets2.util.modes.BaseMode;
-import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.vertex.*;
+import it.unimi.dsi.fastutil.objects.Reference2BooleanMap;
+import it.unimi.dsi.fastutil.objects.Reference2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.MultiBufferSource;
-import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.block.BlockRenderDispatcher;
-import net.minecraft.client.renderer.block.ModelBlockRenderer;
 import net.minecraft.client.renderer.blockentity.BlockEntityRenderDispatcher;
-import net.minecraft.client.renderer.texture.OverlayTexture;
 import net.minecraft.client.resources.model.BakedModel;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
@@ -26,7 +26,6 @@ import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.phys.BlockHitResult;
 import net.minecraft.world.phys.Vec3;
-import net.minecraft.world.phys.shapes.Shapes;
 import net.minecraftforge.client.event.RenderLevelStageEvent;
 import net.minecraftforge.client.model.data.ModelData;
 import org.joml.Matrix4f;
@@ -34,43 +33,39 @@ import org.joml.Vector3f;
 
 import java.awt.*;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 public class VBORenderer {
-    private static ArrayList<StatePos> statePosCache;
-    private static int sortCounter = 0;
+    private static ArrayList<StatePos> statePosCache; //Building/Exchanging gadget render
+    private static BlockBuffer blockBufferCache; //Copy/Paste render - read straight from the client's packed copy data
     //public static UUID gadgetUUIDCache = UUID.randomUUID(); //The Unique ID of the gadget who's data we're caching. If this differs, it means the player swapped to another gadget
     public static UUID copyPasteUUIDCache = UUID.randomUUID(); //A unique ID of the copy/paste, which we'll use to determine if we need to request an update from the server Its initialized as random to avoid having to null check it
 
     private static FakeRenderingWorld fakeRenderingWorld;
+    //The blocks in the render without a model (like chests), which get drawn every frame - found once per rebuild instead of every frame
+    private static ArrayList<StatePos> beRenderList = new ArrayList<>();
+    private static FakeRenderingWorld beRenderWorld; //Only built when there's something in beRenderList, and only again when the render moves
+    private static BlockPos beRenderPos = BlockPos.ZERO;
+    //BlockState -> whether it has a baked model. Guarded by itself, since the meshers ask too, and cleared on resource reload
+    private static final Reference2BooleanMap<BlockState> modelRenderCache = new Reference2BooleanOpenHashMap<>();
 
-    //Cached SortStates used for re-sorting every so often
-    private static final Map<RenderType, BufferBuilder.SortState> sortStates = new HashMap<>();
-    //A map of RenderType -> DireBufferBuilder, so we can draw the different render types in proper order later
-    private static final Map<RenderType, DireBufferBuilder> builders = RenderType.chunkBufferLayers().stream().collect(Collectors.toMap((renderType) -> renderType, (type) -> new DireBufferBuilder(type.bufferSize())));
-    //A map of RenderType -> Vertex Buffer to buffer the different render types.
-    private static final Map<RenderType, VertexBuffer> vertexBuffers = RenderType.chunkBufferLayers().stream().collect(Collectors.toMap((renderType) -> renderType, (type) -> new VertexBuffer(VertexBuffer.Usage.STATIC)));
-
-    //Get the buffer from the map, and ensure its building
-    public static DireBufferBuilder getBuffer(RenderType renderType) {
-        final DireBufferBuilder buffer = builders.get(renderType);
-        if (!buffer.building()) {
-            buffer.begin(renderType.mode(), renderType.format());
-        }
-        return buffer;
-    }
+    //The preview mesh, split into sections which are meshed off the render thread
+    private static final SectionedRender sectionedRender = new SectionedRender();
 
     public static void clearBuffers() { //Prevents leaks
-        for (Map.Entry<RenderType, VertexBuffer> entry : vertexBuffers.entrySet()) {
-            entry.getValue().close();
-        }
+        sectionedRender.close();
+        //The caches hold on to the level, and without them the next frame rebuilds what we just closed
+        statePosCache = null;
+        blockBufferCache = null;
+        fakeRenderingWorld = null;
+        copyPasteUUIDCache = UUID.randomUUID();
+        beRenderList = new ArrayList<>();
+        beRenderWorld = null;
     }
 
     //Start rendering - this is the most expensive part, so we render it, then cache it, and draw it over and over (much cheaper)
     public static void buildRender(RenderLevelStageEvent evt, Player player, ItemStack gadget) {
+        sectionedRender.uploadCompleted(); //Pick up any sections that finished meshing since last frame
         BlockHitResult lookingAt = VectorHelper.getLookingAt(player, gadget);
         BlockPos anchorPos = GadgetNBT.getAnchorPos(gadget);
         BlockPos renderPos = anchorPos.equals(GadgetNBT.nullPos) ? lookingAt.getBlockPos() : anchorPos;
@@ -91,8 +86,14 @@ public class VBORenderer {
         }
 
         //Start drawing the Render and cache it, used for both Building and Copy/Paste
-        if (shouldUpdateRender(player, gadget))
-            generateRender(player.level(), renderPos, gadget, 0.5f, statePosCache, vertexBuffers);
+        if (shouldUpdateRender(player, gadget)) {
+            if (blockBufferCache != null)
+                generateRender(player.level(), renderPos, gadget, 0.5f, blockBufferCache, sectionedRender);
+            else //shouldUpdateRender already built the fake world for this list - only the sections that changed get meshed again
+                sectionedRender.rebuild(player.level(), fakeRenderingWorld, renderPos, gadget, 0.5f, getSortPos(renderPos), statePosCache);
+            beRenderList = blockBufferCache != null ? getBERenderList(blockBufferCache) : getBERenderList(statePosCache);
+            beRenderWorld = null;
+        }
     }
 
     public static boolean shouldUpdateRender(Player player, ItemStack gadget) {
@@ -116,6 +117,8 @@ public class VBORenderer {
 
             //If not, we should update the cache, the UUID, and return true, meaning we need to update the render
             statePosCache = buildList;
+            fakeRenderingWorld = tempWorld;
+            blockBufferCache = null;
             copyPasteUUIDCache = UUID.randomUUID(); //In case theres an existing copy/Paste render saved, nullify it
             return true;
         } else if (gadget.getItem() instanceof GadgetCopyPaste || gadget.getItem() instanceof GadgetCutPaste) {
@@ -130,7 +133,9 @@ public class VBORenderer {
                     return false;
                 //If we get here, the copy paste we have stored here differs from whats in the client AND the client is up to date, so rebuild!
                 copyPasteUUIDCache = BG2ClientUUID; //Cache the new copyPasteUUID for next cycle
-                statePosCache = BG2DataClient.getLookupFromUUID(gadgetUUID);
+                blockBufferCache = BG2DataClient.getBufferFromUUID(gadgetUUID);
+                statePosCache = null;
+                fakeRenderingWorld = null; //So the Building/Exchanging render gets rebuilt when we switch back
                 return true; //Need a render update!
             }
         } else { //Not a gadget that needs updates
@@ -140,64 +145,28 @@ public class VBORenderer {
     }
 
     /**
-     * This method creates a Map<RenderType, VertexBuffer> when given an ArrayList<StatePos> statePosCache - its used both here to draw in-game AND in the TemplateManagerGUI.java class
+     * This method (re)builds a SectionedRender when given an ArrayList<StatePos> statePosCache - its used both here to draw in-game AND in the TemplateManagerGUI.java class
      */
-    public static void generateRender(Level level, BlockPos renderPos, ItemStack gadget, float transparency, ArrayList<StatePos> statePosCache, Map<RenderType, VertexBuffer> vertexBuffers) {
-        boolean isExchanging = gadget.getItem() instanceof BaseGadget && GadgetNBT.getMode(gadget).isExchanging;
+    public static void generateRender(Level level, BlockPos renderPos, ItemStack gadget, float transparency, ArrayList<StatePos> statePosCache, SectionedRender sectionedRender) {
         if (statePosCache == null || statePosCache.isEmpty()) return;
-        fakeRenderingWorld = new FakeRenderingWorld(level, statePosCache, renderPos);
-        PoseStack matrix = new PoseStack(); //Create a new matrix stack for use in the buffer building process
-        BlockRenderDispatcher dispatcher = Minecraft.getInstance().getBlockRenderer();
-        ModelBlockRenderer modelBlockRenderer = dispatcher.getModelRenderer();
-        final RandomSource random = RandomSource.create();
-        //Iterate through the state pos cache and start drawing to the VertexBuffers - skip modelRenders(like chests) - include fluids (even though they don't work yet)
-        for (StatePos pos : statePosCache.stream().filter(pos -> isModelRender(pos.state) || !pos.state.getFluidState().isEmpty()).toList()) {
-            BlockState renderState = fakeRenderingWorld.getBlockStateWithoutReal(pos.pos);
-            if (renderState.isAir()) continue;
-
-            BakedModel ibakedmodel = dispatcher.getBlockModel(renderState);
-            matrix.pushPose();
-            matrix.translate(pos.pos.getX(), pos.pos.getY(), pos.pos.getZ());
-            if (isExchanging) {
-                matrix.translate(-0.0005f, -0.0005f, -0.0005f); //For Exchanger
-                matrix.scale(1.001f, 1.001f, 1.001f); //For Exchanger
-            }
+        FakeRenderingWorld renderWorld = new FakeRenderingWorld(level, statePosCache, renderPos);
+        sectionedRender.rebuild(level, renderWorld, renderPos, gadget, transparency, getSortPos(renderPos), statePosCache);
+    }
 
-            for (RenderType renderType : ibakedmodel.getRenderTypes(renderState, random, ModelData.EMPTY)) {
-                //Flowers render weirdly so we use a custom renderer to make them look better. Glass and Flowers are both cutouts, so we only want this for non-cube blocks
-                if (renderType.equals(RenderType.cutout()) && renderState.getShape(level, pos.pos.offset(renderPos)).equals(Shapes.block()))
-                    renderType = RenderType.translucent();
-                DireVertexConsumer direVertexConsumer = new DireVertexConsumer(getBuffer(renderType), transparency);
-                //Use tesselateBlock to skip the block.isModel check - this helps render Create blocks that are both models AND animated
-                if (renderState.getFluidState().isEmpty()) {
-                    //modelBlockRenderer.tesselateBlock(level, ibakedmodel, renderState, pos.pos.offset(renderPos).above(255), matrix, direVertexConsumer, false, random, renderState.getSeed(pos.pos.offset(renderPos)), OverlayTexture.NO_OVERLAY, ModelData.EMPTY, renderType);
-                    try {
-                        modelBlockRenderer.tesselateBlock(fakeRenderingWorld, ibakedmodel, renderState, pos.pos.offset(renderPos).above(255), matrix, direVertexConsumer, false, random, renderState.getSeed(pos.pos.offset(renderPos)), OverlayTexture.NO_OVERLAY, ibakedmodel.getModelData(fakeRenderingWorld, pos.pos, renderState, ModelData.EMPTY), renderType);
-                    } catch (Exception e) {
-                        //System.out.println(e);
-                    }
-                } else
-                    RenderFluidBlock.renderFluidBlock(renderState, level, pos.pos.offset(renderPos).above(255), matrix, direVertexConsumer, false);
-                //dispatcher.renderLiquid(pos.pos, level, direVertexConsumer, renderState, renderState.getFluidState());
-                //dispatcher.renderBatched(renderState, pos.pos.offset(lookingAt.getBlockPos()), level, matrix, direVertexConsumer, true, RandomSource.create(), ModelData.EMPTY, renderType);
+    /**
+     * Same as above, but reads the copy/paste data straight from its packed buffer - without a StatePos per block
+     */
+    public static void generateRender(Level level, BlockPos renderPos, ItemStack gadget, float transparency, BlockBuffer blockBuffer, SectionedRender sectionedRender) {
+        if (blockBuffer == null || blockBuffer.isEmpty()) return;
+        FakeRenderingWorld renderWorld = new FakeRenderingWorld(level, blockBuffer, renderPos);
+        sectionedRender.rebuild(level, renderWorld, renderPos, gadget, transparency, getSortPos(renderPos), blockBuffer);
+    }
 
-            }
-            matrix.popPose();
-        }
-        //Sort all the builder's vertices and then upload them to the vertex buffers
+    //The camera position relative to the render, which is what the quads get sorted by
+    private static Vector3f getSortPos(BlockPos renderPos) {
         Vec3 projectedView = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
         Vec3 subtracted = projectedView.subtract(renderPos.getX(), renderPos.getY(), renderPos.getZ());
-        Vector3f sortPos = new Vector3f((float) subtracted.x, (float) subtracted.y, (float) subtracted.z);
-        for (Map.Entry<RenderType, DireBufferBuilder> entry : builders.entrySet()) {
-            RenderType renderType = entry.getKey();
-            DireBufferBuilder direBufferBuilder = getBuffer(renderType);
-            direBufferBuilder.setQuadSorting(VertexSorting.byDistance(sortPos));
-            sortStates.put(renderType, direBufferBuilder.getSortState());
-            VertexBuffer vertexBuffer = vertexBuffers.get(entry.getKey());
-            vertexBuffer.bind();
-            vertexBuffer.upload(direBufferBuilder.end());
-            VertexBuffer.unbind();
-        }
+        return new Vector3f((float) subtracted.x, (float) subtracted.y, (float) subtracted.z);
     }
 
     public static void drawCopyBox(PoseStack matrix, ItemStack gadget, String mode) {
@@ -221,22 +190,71 @@ public class VBORenderer {
     }
 
     public static boolean isModelRender(BlockState state) {
+        synchronized (modelRenderCache) {
+            if (modelRenderCache.containsKey(state))
+                return modelRenderCache.getBoolean(state);
+        }
+        boolean isModelRender = hasQuads(state);
+        synchronized (modelRenderCache) {
+            modelRenderCache.put(state, isModelRender);
+        }
+        return isModelRender;
+    }
+
+    private static boolean hasQuads(BlockState state) {
         BlockRenderDispatcher dispatcher = Minecraft.getInstance().getBlockRenderer();
         BakedModel ibakedmodel = dispatcher.getBlockModel(state);
+        RandomSource random = RandomSource.create();
+        if (!ibakedmodel.getQuads(state, null, random, ModelData.EMPTY, null).isEmpty())
+            return true;
         for (Direction direction : Direction.values()) {
-            if (!ibakedmodel.getQuads(state, direction, RandomSource.create(), ModelData.EMPTY, null).isEmpty()) {
+            if (!ibakedmodel.getQuads(state, direction, random, ModelData.EMPTY, null).isEmpty())
                 return true;
-            }
-            if (!ibakedmodel.getQuads(state, null, RandomSource.create(), ModelData.EMPTY, null).isEmpty()) {
-                return true;
-            }
         }
         return false;
     }
 
+    /**
+     * Models get re-baked on resource reload, so forget what we knew about them
+     */
+    public static void clearModelRenderCache() {
+        synchronized (modelRenderCache) {
+            modelRenderCache.clear();
+        }
+    }
+
+    /**
+     * The blocks that need drawing every frame because they don't have a model, like chests
+     */
+    public static ArrayList<StatePos> getBERenderList(ArrayList<StatePos> statePosList) {
+        ArrayList<StatePos> beRenders = new ArrayList<>();
+        for (StatePos pos : statePosList) {
+            if (!pos.state.isAir() && !isModelRender(pos.state))
+                beRenders.add(pos);
+        }
+        return beRenders;
+    }
+
+    public static ArrayList<StatePos> getBERenderList(BlockBuffer blockBuffer) {
+        ArrayList<StatePos> beRenders = new ArrayList<>();
+        //Check each palette entry once - most copies don't have any of these, so there's no need to walk the blocks at all
+        ReferenceOpenHashSet<BlockState> beStates = new ReferenceOpenHashSet<>();
+        for (BlockState state : blockBuffer.getPalette()) {
+            if (!state.isAir() && !isModelRender(state))
+                beStates.add(state);
+        }
+        if (beStates.isEmpty()) return beRenders;
+        BlockBuffer.Cursor cursor = blockBuffer.cursor();
+        while (cursor.next()) {
+            if (beStates.contains(cursor.state()))
+                beRenders.add(new StatePos(cursor.state(), cursor.pos().immutable()));
+        }
+        return beRenders;
+    }
+
     //Draw what we've cached
     public static void drawRender(RenderLevelStageEvent evt, Player player, ItemStack gadget) {
-        if (vertexBuffers == null || statePosCache == null) {
+        if (statePosCache == null && blockBufferCache == null) {
             return;
         }
         MultiBufferSource.BufferSource buffersource = Minecraft.getInstance().renderBuffers().bufferSource();
@@ -264,63 +282,36 @@ public class VBORenderer {
                 return;
             renderPos = renderPos.above().offset(GadgetNBT.getRelativePaste(gadget));
         }
-        //Sort every <X> Frames to prevent screendoor effect
-        if (sortCounter > 20) {
-            sortAll(renderPos);
-            sortCounter = 0;
-        } else {
-            sortCounter++;
-        }
+        //Re-sort once the camera has moved far enough, to prevent screendoor effect
+        sectionedRender.sortIfMoved(getSortPos(renderPos));
 
         PoseStack matrix = evt.getPoseStack();
         matrix.pushPose();
         matrix.translate(-projectedView.x(), -projectedView.y(), -projectedView.z());
         matrix.translate(renderPos.getX(), renderPos.getY(), renderPos.getZ());
         //Draw the renders in the specified order
-        ArrayList<RenderType> drawSet = new ArrayList<>();
-        drawSet.add(RenderType.solid());
-        drawSet.add(RenderType.cutout());
-        drawSet.add(RenderType.cutoutMipped());
-        drawSet.add(RenderType.translucent());
-        drawSet.add(RenderType.tripwire());
-        try {
-            for (RenderType renderType : drawSet) {
-                RenderType drawRenderType;
-                if (renderType.equals(RenderType.cutout()))
-                    drawRenderType = OurRenderTypes.RenderBlock;
-                else
-                    drawRenderType = RenderType.translucent();
-                VertexBuffer vertexBuffer = vertexBuffers.get(renderType);
-                if (vertexBuffer.getFormat() == null)
-                    continue; //IDE says this is never null, but if we remove this check we crash because its null so....
-                drawRenderType.setupRenderState();
-                vertexBuffer.bind();
-                vertexBuffer.drawWithShader(matrix.last().pose(), new Matrix4f(evt.getProjectionMatrix()), RenderSystem.getShader());
-                VertexBuffer.unbind();
-                drawRenderType.clearRenderState();
-            }
-        } catch (Exception e) {
-            System.out.println(e);
-        }
+        sectionedRender.draw(matrix.last().pose(), new Matrix4f(evt.getProjectionMatrix()));
         matrix.popPose();
 
         BlockRenderDispatcher dispatcher = Minecraft.getInstance().getBlockRenderer();
         MyRenderMethods.MultiplyAlphaRenderTypeBuffer multiplyAlphaRenderTypeBuffer = new MyRenderMethods.MultiplyAlphaRenderTypeBuffer(buffersource, 0.5f);
         //If any of the blocks in the render didn't have a model (like chests) we draw them here. This renders AND draws them, so more expensive than caching, but I don't think we have a choice
-        fakeRenderingWorld = new FakeRenderingWorld(player.level(), statePosCache, renderPos);
-        for (StatePos pos : statePosCache.stream().filter(pos -> !isModelRender(pos.state)).toList()) {
-            if (pos.state.isAir()) continue;
+        if (!beRenderList.isEmpty() && (beRenderWorld == null || !beRenderPos.equals(renderPos))) {
+            beRenderWorld = blockBufferCache != null ? new FakeRenderingWorld(player.level(), blockBufferCache, renderPos) : new FakeRenderingWorld(player.level(), statePosCache, renderPos);
+            beRenderPos = renderPos;
+        }
+        for (StatePos pos : beRenderList) {
             matrix.pushPose();
             matrix.translate(-projectedView.x(), -projectedView.y(), -projectedView.z());
             matrix.translate(renderPos.getX(), renderPos.getY(), renderPos.getZ());
             matrix.translate(pos.pos.getX(), pos.pos.getY(), pos.pos.getZ());
             //MyRenderMethods.renderBETransparent(mockBuilderWorld.getBlockState(pos.pos), matrix, buffersource, 15728640, 655360, 0.5f);
             BlockEntityRenderDispatcher blockEntityRenderer = Minecraft.getInstance().getBlockEntityRenderDispatcher();
-            BlockEntity blockEntity = fakeRenderingWorld.getBlockEntity(pos.pos);
+            BlockEntity blockEntity = beRenderWorld.getBlockEntity(pos.pos);
             if (blockEntity != null)
                 blockEntityRenderer.render(blockEntity, 0, matrix, multiplyAlphaRenderTypeBuffer);
             else
-                MyRenderMethods.renderBETransparent(fakeRenderingWorld.getBlockState(pos.pos), matrix, buffersource, 15728640, 655360, 0.5f);
+                MyRenderMethods.renderBETransparent(beRenderWorld.getBlockState(pos.pos), matrix, buffersource, 15728640, 655360, 0.5f);
             matrix.popPose();
         }
 
@@ -363,29 +354,4 @@ public class VBORenderer {
             }
         }
     }
-
-    //Sort all the RenderTypes
-    public static void sortAll(BlockPos lookingAt) {
-        for (Map.Entry<RenderType, BufferBuilder.SortState> entry : sortStates.entrySet()) {
-            RenderType renderType = entry.getKey();
-            BufferBuilder.RenderedBuffer renderedBuffer = sort(lookingAt, renderType);
-            VertexBuffer vertexBuffer = vertexBuffers.get(renderType);
-            vertexBuffer.bind();
-            vertexBuffer.upload(renderedBuffer);
-            VertexBuffer.unbind();
-        }
-    }
-
-    //Sort the render type we pass in - using DireBufferBuilder because we want to sort in the opposite direction from normal
-    public static BufferBuilder.RenderedBuffer sort(BlockPos lookingAt, RenderType renderType) {
-        Vec3 projectedView = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
-        Vec3 subtracted = projectedView.subtract(lookingAt.getX(), lookingAt.getY(), lookingAt.getZ());
-        Vector3f sortPos = new Vector3f((float) subtracted.x, (float) subtracted.y, (float) subtracted.z);
-        DireBufferBuilder bufferBuilder = getBuffer(renderType);
-        BufferBuilder.SortState sortState = sortStates.get(renderType);
-        bufferBuilder.restoreSortState(sortState);
-        bufferBuilder.setQuadSorting(VertexSorting.byDistance(sortPos));
-        sortStates.put(renderType, bufferBuilder.getSortState());
-        return bufferBuilder.end();
-    }
 }
@@ -7,7 +7,7 @@ package com.direwolf20.buildinggadgets2.client.screen;
 
 import com.direwolf20.buildinggadgets2.BuildingGadgets2;
 import com.direwolf20.buildinggadgets2.client.renderer.MyRenderMethods;
-import com.direwolf20.buildinggadgets2.client.renderer.OurRenderTypes;
+import com.direwolf20.buildinggadgets2.client.renderer.SectionedRender;
 import com.direwolf20.buildinggadgets2.client.renderer.VBORenderer;
 import com.direwolf20.buildinggadgets2.client.screen.widgets.ScrollingMaterialList;
 import com.direwolf20.buildinggadgets2.common.blockentities.TemplateManagerBE;
@@ -25,7 +25,6 @@ import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
 import com.direwolf20.buildinggadgets2.util.datatypes.Template;
 import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.vertex.PoseStack;
-import com.mojang.blaze3d.vertex.VertexBuffer;
 import com.mojang.blaze3d.vertex.VertexSorting;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiGraphics;
@@ -34,7 +33,6 @@ import net.minecraft.client.gui.components.EditBox;
 import net.minecraft.client.gui.screens.inventory.AbstractContainerScreen;
 import net.minecraft.client.renderer.MultiBufferSource;
 import net.minecraft.client.renderer.Rect2i;
-import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.blockentity.BlockEntityRenderDispatcher;
 import net.minecraft.client.renderer.texture.OverlayTexture;
 import net.minecraft.core.BlockPos;
@@ -54,11 +52,7 @@ import org.joml.Quaternionf;
 import org.lwjgl.opengl.GL11;
 
 import java.util.ArrayList;
-import java.util.Map;
 import java.util.UUID;
-import java.util.stream.Collectors;
-
-import static com.direwolf20.buildinggadgets2.client.renderer.VBORenderer.isModelRender;
 
 public class TemplateManagerGUI extends AbstractContainerScreen<TemplateManagerContainer> {
     private static final ResourceLocation background = new ResourceLocation(BuildingGadgets2.MODID, "textures/gui/template_manager.png");
@@ -79,6 +73,8 @@ public class TemplateManagerGUI extends AbstractContainerScreen<TemplateManagerC
     public static UUID templateUUID = UUID.randomUUID(); //Cached version of whatevers in slot 1
     public static UUID copyPasteUUIDCache = UUID.randomUUID(); //A unique ID of the copy/paste, which we'll use to determine if we need to request an update from the server Its initialized as random to avoid having to null check it
     private static ArrayList<StatePos> statePosCache;
+    private static ArrayList<StatePos> beRenderList = new ArrayList<>(); //The blocks without a model (like chests), found once per rebuild
+    private static FakeRenderingWorld beRenderWorld;
 
     private final TemplateManagerBE be;
     private final TemplateManagerContainer container;
@@ -86,7 +82,7 @@ public class TemplateManagerGUI extends AbstractContainerScreen<TemplateManagerC
     private ScrollingMaterialList scrollingList;
     private boolean showMaterialList = false;
 
-    private static final Map<RenderType, VertexBuffer> vertexBuffers = RenderType.chunkBufferLayers().stream().collect(Collectors.toMap((renderType) -> renderType, (type) -> new VertexBuffer(VertexBuffer.Usage.STATIC)));
+    private static final SectionedRender sectionedRender = new SectionedRender();
 
     public TemplateManagerGUI(TemplateManagerContainer container, Inventory playerInventory, Component title) {
         super(container, playerInventory, Component.literal(""));
@@ -187,7 +183,9 @@ public class TemplateManagerGUI extends AbstractContainerScreen<TemplateManagerC
         //If we get here, the copy paste we have stored here differs from whats in the client AND the client is up to date, so rebuild!
         copyPasteUUIDCache = BG2ClientUUID; //Cache the new copyPasteUUID for next cycle
         statePosCache = BG2DataClient.getLookupFromUUID(gadgetUUID);
-        VBORenderer.generateRender(getMinecraft().level, BlockPos.ZERO, gadget, 1f, statePosCache, vertexBuffers);
+        VBORenderer.generateRender(getMinecraft().level, BlockPos.ZERO, gadget, 1f, statePosCache, sectionedRender);
+        beRenderList = statePosCache == null ? new ArrayList<>() : VBORenderer.getBERenderList(statePosCache);
+        beRenderWorld = beRenderList.isEmpty() ? null : new FakeRenderingWorld(getMinecraft().level, statePosCache, BlockPos.ZERO);
         scrollingList.setTemplateItem(gadget);
         return true; //Need a render update!
     }
@@ -269,31 +267,8 @@ public class TemplateManagerGUI extends AbstractContainerScreen<TemplateManagerC
         MultiBufferSource.BufferSource buffersource = Minecraft.getInstance().renderBuffers().bufferSource();
 
         //Draw the renders in the specified order
-        ArrayList<RenderType> drawSet = new ArrayList<>();
-        drawSet.add(RenderType.solid());
-        drawSet.add(RenderType.cutout());
-        drawSet.add(RenderType.cutoutMipped());
-        drawSet.add(RenderType.translucent());
-        drawSet.add(RenderType.tripwire());
-        try {
-            for (RenderType renderType : drawSet) {
-                RenderType drawRenderType;
-                if (renderType.equals(RenderType.cutout()))
-                    drawRenderType = OurRenderTypes.RenderBlock;
-                else
-                    drawRenderType = RenderType.translucent();
-                VertexBuffer vertexBuffer = vertexBuffers.get(renderType);
-                if (vertexBuffer.getFormat() == null)
-                    continue; //IDE says this is never null, but if we remove this check we crash because its null so....
-                drawRenderType.setupRenderState();
-                vertexBuffer.bind();
-                vertexBuffer.drawWithShader(matrix.last().pose(), RenderSystem.getProjectionMatrix(), RenderSystem.getShader());
-                VertexBuffer.unbind();
-                drawRenderType.clearRenderState();
-            }
-        } catch (Exception e) {
-            System.out.println(e);
-        }
+        sectionedRender.uploadCompleted();
+        sectionedRender.draw(matrix.last().pose(), RenderSystem.getProjectionMatrix());
 
 
         //if (true) return; //Remove this will render Tiles (Like chests) but remove tooltips - can't figure out how to fix tooltips!
@@ -302,13 +277,11 @@ public class TemplateManagerGUI extends AbstractContainerScreen<TemplateManagerC
         matrix.setIdentity();
         MyRenderMethods.MultiplyAlphaRenderTypeBuffer multiplyAlphaRenderTypeBuffer = new MyRenderMethods.MultiplyAlphaRenderTypeBuffer(buffersource, 1f);
         //If any of the blocks in the render didn't have a model (like chests) we draw them here. This renders AND draws them, so more expensive than caching, but I don't think we have a choice
-        FakeRenderingWorld fakeRenderingWorld = new FakeRenderingWorld(player.level(), statePosCache, BlockPos.ZERO);
-        for (StatePos pos : statePosCache.stream().filter(pos -> !isModelRender(pos.state)).toList()) {
-            if (pos.state.isAir()) continue;
+        for (StatePos pos : beRenderList) {
             matrix.pushPose();
             matrix.translate(pos.pos.getX(), pos.pos.getY(), pos.pos.getZ());
             BlockEntityRenderDispatcher blockEntityRenderer = Minecraft.getInstance().getBlockEntityRenderDispatcher();
-            BlockEntity blockEntity = fakeRenderingWorld.getBlockEntity(pos.pos);
+            BlockEntity blockEntity = beRenderWorld.getBlockEntity(pos.pos);
             if (blockEntity != null) {
                 var renderer = blockEntityRenderer.getRenderer(blockEntity);
                 try {
@@ -318,7 +291,7 @@ public class TemplateManagerGUI extends AbstractContainerScreen<TemplateManagerC
                 }
             } else {
                 try {
-                    MyRenderMethods.renderBETransparent(fakeRenderingWorld.getBlockState(pos.pos), matrix, buffersource, 15728640, 655360, 0.5f);
+                    MyRenderMethods.renderBETransparent(beRenderWorld.getBlockState(pos.pos), matrix, buffersource, 15728640, 655360, 0.5f);
                 } catch (Exception e) {
                     //No Op
                 }
@@ -469,6 +442,15 @@ public class TemplateManagerGUI extends AbstractContainerScreen<TemplateManagerC
         }
     }
 
+    @Override
+    public void removed() {
+        super.removed();
+        //Nothing draws (or uploads) the preview while we're closed, so free it now rather than keep its buffers - it gets rebuilt when we open again
+        sectionedRender.close();
+        copyPasteUUIDCache = UUID.randomUUID();
+        beRenderWorld = null;
+    }
+
     private void onToggleViewport() {
         this.showMaterialList = !this.showMaterialList;
         if (showMaterialList)
@@ -5,6 +5,7 @@ import com.direwolf20.buildinggadgets2.common.worlddata.BG2DataClient;
 import com.direwolf20.buildinggadgets2.util.BuildingUtils;
 import com.direwolf20.buildinggadgets2.util.GadgetNBT;
 import com.direwolf20.buildinggadgets2.util.ItemStackKey;
+import com.direwolf20.buildinggadgets2.util.datatypes.BlockBuffer;
 import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
 import com.mojang.blaze3d.platform.Lighting;
 import com.mojang.blaze3d.systems.RenderSystem;
@@ -20,7 +21,6 @@ import net.minecraft.world.item.ItemStack;
 import org.lwjgl.glfw.GLFW;
 
 import java.awt.*;
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
@@ -44,7 +44,7 @@ public class ScrollingMaterialList extends EntryList<ScrollingMaterialList.Entry
 
     private SortingModes sortingMode;
     private long lastUpdate;
-    private ArrayList<StatePos> statePosArrayList;
+    private BlockBuffer blockBuffer;
     private Map<ItemStackKey, Integer> itemCountsMap;
     private ItemStack templateItem;
     public List<Component> hoveringText;
@@ -64,7 +64,7 @@ public class ScrollingMaterialList extends EntryList<ScrollingMaterialList.Entry
 
     public void setTemplateItem(ItemStack templateItem) {
         this.templateItem = templateItem;
-        statePosArrayList = new ArrayList<>();
+        blockBuffer = null;
         updateEntries();
     }
 
@@ -74,8 +74,8 @@ public class ScrollingMaterialList extends EntryList<ScrollingMaterialList.Entry
         this.setScrollAmount(0);
 
         //Get the statePos list - since this screen can only be called from 'paste' mode, the client side should always be up to date in theory?
-        if (statePosArrayList == null || statePosArrayList.isEmpty()) {
-            statePosArrayList = BG2DataClient.getLookupFromUUID(GadgetNBT.getUUID(templateItem));
+        if (blockBuffer == null || blockBuffer.isEmpty()) {
+            blockBuffer = BG2DataClient.getBufferFromUUID(GadgetNBT.getUUID(templateItem));
         }
 
         Player player = Minecraft.getInstance().player;
@@ -85,7 +85,7 @@ public class ScrollingMaterialList extends EntryList<ScrollingMaterialList.Entry
             return;
 
         //Get a list of ItemStackkey -> Amount required (Integer)
-        itemCountsMap = StatePos.getItemList(statePosArrayList);
+        itemCountsMap = StatePos.getItemList(blockBuffer);
 
         for (Map.Entry<ItemStackKey, Integer> entry : itemCountsMap.entrySet()) {
             if (entry.getKey().getStack().isEmpty()) continue;
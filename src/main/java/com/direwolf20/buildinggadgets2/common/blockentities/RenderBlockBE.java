@@ -2,13 +2,14 @@ package com.direwolf20.buildinggadgets2.common.blockentities;
 
 import com.direwolf20.buildinggadgets2.client.particles.fluidparticle.FluidFlowParticleData;
 import com.direwolf20.buildinggadgets2.client.particles.itemparticle.ItemFlowParticleData;
+import com.direwolf20.buildinggadgets2.common.events.RenderBlockScheduler;
+import com.direwolf20.buildinggadgets2.common.events.RenderBlockSync;
 import com.direwolf20.buildinggadgets2.setup.Registration;
 import com.direwolf20.buildinggadgets2.util.GadgetUtils;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.NbtUtils;
-import net.minecraft.network.Connection;
 import net.minecraft.network.protocol.game.ClientboundBlockEntityDataPacket;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.Mth;
@@ -28,6 +29,7 @@ import java.util.Random;
 import static com.direwolf20.buildinggadgets2.util.GadgetUtils.getSimpleItemForBlock;
 
 public class RenderBlockBE extends BlockEntity {
+    private static final int PLACE_FLAGS = Block.UPDATE_CLIENTS | Block.UPDATE_KNOWN_SHAPE; //Neighbours get updated afterwards, see setRealBlock
     public byte drawSize;
     public BlockState renderBlock;
     public BlockState sourceBlock;
@@ -36,6 +38,8 @@ public class RenderBlockBE extends BlockEntity {
     public boolean shrinking;
     public boolean exchanging;
     public byte renderType;
+    public long scheduledTick = -1; //Server side - the tick RenderBlockScheduler will finish us on
+    private long anchorTick; //Server side - the tick drawSize was set on. The current size is worked out from it rather than counted up every tick
 
     public RenderBlockBE(BlockPos pos, BlockState state) {
         super(Registration.RenderBlock_BE.get(), pos, state);
@@ -137,19 +141,50 @@ public class RenderBlockBE extends BlockEntity {
         }
     }
 
-    public void tickServer() {
-        increaseDrawSize();
-        if (shrinking && drawSize <= 0) {
+    /**
+     * Called by RenderBlockScheduler once the animation is over. Returns the state that got placed, whose neighbours still need updating - or null
+     * if we're exchanging and have only finished shrinking the old block.
+     */
+    public BlockState finishAnimation() {
+        if (shrinking) {
             if (exchanging) {
                 shrinking = false;
                 renderBlock = targetBlock;
-                markDirtyClient();
-            } else {
-                setRealBlock(Blocks.AIR.defaultBlockState());
+                setDrawSize((byte) 0);
+                return null;
             }
-        } else if (drawSize >= getMaxSize()) {
-            setRealBlock(targetBlock);
+            return setRealBlock(Blocks.AIR.defaultBlockState());
         }
+        return setRealBlock(targetBlock);
+    }
+
+    /**
+     * The current size - on the server it's derived from the game time, on the client it's ticked by tickClient
+     */
+    public byte getDrawSize() {
+        if (level == null || level.isClientSide) return drawSize;
+        long elapsed = level.getGameTime() - anchorTick;
+        return (byte) Mth.clamp(shrinking ? drawSize - elapsed : drawSize + elapsed, 0, getMaxSize());
+    }
+
+    public void setDrawSize(byte drawSize) {
+        this.drawSize = drawSize;
+        scheduleFinish();
+        markDirtyClient();
+    }
+
+    //Restarts the clock at the current drawSize, and tells the scheduler when we'll be done
+    private void scheduleFinish() {
+        if (level == null || level.isClientSide) return;
+        anchorTick = level.getGameTime();
+        RenderBlockScheduler.schedule(this, anchorTick + (shrinking ? drawSize : getMaxSize() - drawSize));
+    }
+
+    @Override
+    public void onLoad() {
+        super.onLoad();
+        if (renderBlock != null && scheduledTick == -1) //Loaded from disk mid-animation - continue from the saved size
+            scheduleFinish();
     }
 
     public byte getMaxSize() {
@@ -158,10 +193,13 @@ public class RenderBlockBE extends BlockEntity {
         return 20;
     }
 
-    public void setRealBlock(BlockState realBlock) {
+    /**
+     * Places the real block without updating its neighbours - RenderBlockScheduler does that once everything finishing this tick is placed
+     */
+    public BlockState setRealBlock(BlockState realBlock) {
         if (realBlock == null) { //This should never happen in theory, defensive coding
-            level.setBlockAndUpdate(this.getBlockPos(), Blocks.AIR.defaultBlockState());
-            return;
+            level.setBlock(this.getBlockPos(), Blocks.AIR.defaultBlockState(), PLACE_FLAGS);
+            return Blocks.AIR.defaultBlockState();
         }
         if (!realBlock.canSurvive(level, getBlockPos())) {
             List<ItemStack> drops = GadgetUtils.getDropsForBlockState((ServerLevel) level, getBlockPos(), realBlock, null);
@@ -169,12 +207,12 @@ public class RenderBlockBE extends BlockEntity {
                 ItemEntity itementity = new ItemEntity(level, getBlockPos().getX(), getBlockPos().getY(), getBlockPos().getZ(), returnedItem);
                 itementity.setPickUpDelay(40);
                 level.addFreshEntity(itementity);
-                level.setBlockAndUpdate(this.getBlockPos(), Blocks.AIR.defaultBlockState());
-                return;
+                level.setBlock(this.getBlockPos(), Blocks.AIR.defaultBlockState(), PLACE_FLAGS);
+                return Blocks.AIR.defaultBlockState();
             }
         }
         BlockState adjustedState = Block.updateFromNeighbourShapes(realBlock, level, getBlockPos()); //Ensure double chests are placed as single chests if only 1 chest available in copy/paste, for example, or fixes fences
-        level.setBlockAndUpdate(this.getBlockPos(), adjustedState);
+        level.setBlock(this.getBlockPos(), adjustedState, PLACE_FLAGS);
         if (blockEntityData != null) {
             BlockEntity newBE = level.getBlockEntity(this.getBlockPos());
             try {
@@ -183,6 +221,7 @@ public class RenderBlockBE extends BlockEntity {
                 System.out.println("Failed to restore tile data for block at: " + this.getBlockPos() + " with NBT: " + blockEntityData + ". Consider adding it to the blacklist");
             }
         }
+        return adjustedState;
     }
 
     public void increaseDrawSize() {
@@ -225,12 +264,26 @@ public class RenderBlockBE extends BlockEntity {
             drawSize = getMaxSize();
         }
 
+        scheduleFinish();
         markDirtyClient();
     }
 
     public void setBlockEntityData(CompoundTag tag) {
-        blockEntityData = tag;
-        markDirtyClient();
+        blockEntityData = tag; //Server side only - the client doesn't need it to render, so there's nothing to sync
+        setChanged();
+    }
+
+    /**
+     * Client side - applies what PacketRenderBlockSync sent
+     */
+    public void setSyncData(BlockState renderBlock, BlockState sourceBlock, BlockState targetBlock, byte renderType, byte drawSize, boolean shrinking, boolean exchanging) {
+        this.renderBlock = renderBlock;
+        this.sourceBlock = sourceBlock;
+        this.targetBlock = targetBlock;
+        this.renderType = renderType;
+        this.drawSize = drawSize;
+        this.shrinking = shrinking;
+        this.exchanging = exchanging;
     }
 
     /** Misc Methods for TE's */
@@ -262,7 +315,7 @@ public class RenderBlockBE extends BlockEntity {
         }
         tag.putBoolean("shrinking", shrinking);
         tag.putBoolean("exchanging", exchanging);
-        tag.putByte("drawSize", this.drawSize);
+        tag.putByte("drawSize", getDrawSize());
         tag.putByte("renderType", this.renderType);
         if (blockEntityData != null)
             tag.put("blockEntityData", this.blockEntityData);
@@ -276,8 +329,7 @@ public class RenderBlockBE extends BlockEntity {
 
     @Override
     public ClientboundBlockEntityDataPacket getUpdatePacket() {
-        // Vanilla uses the type parameter to indicate which type of tile entity (command block, skull, or beacon?) is receiving the packet, but it seems like Forge has overridden this behavior
-        return ClientboundBlockEntityDataPacket.create(this);
+        return null; //Changes are synced in bulk by RenderBlockSync instead
     }
 
     @Override
@@ -289,21 +341,14 @@ public class RenderBlockBE extends BlockEntity {
     public CompoundTag getUpdateTag() {
         CompoundTag tag = new CompoundTag();
         saveAdditional(tag);
+        tag.remove("blockEntityData"); //Only needed on the server, and can be a whole chest's worth of items
         return tag;
     }
 
-    @Override
-    public void onDataPacket(Connection net, ClientboundBlockEntityDataPacket pkt) {
-        if (pkt.getTag() == null) return;
-        this.load(pkt.getTag());
-    }
-
     public void markDirtyClient() {
         this.setChanged();
-        if (this.getLevel() != null) {
-            BlockState state = this.getLevel().getBlockState(this.getBlockPos());
-            this.getLevel().sendBlockUpdated(this.getBlockPos(), state, state, 3);
-        }
+        if (this.getLevel() != null && !this.getLevel().isClientSide)
+            RenderBlockSync.queue(this);
     }
 
     @Override
@@ -32,11 +32,7 @@ public class RenderBlock extends Block implements EntityBlock {
                 }
             };
         }
-        return (lvl, pos, blockState, t) -> {
-            if (t instanceof RenderBlockBE tile) {
-                tile.tickServer();
-            }
-        };
+        return null; //Server side they're driven by RenderBlockScheduler
     }
 
     @Nullable
@@ -0,0 +1,153 @@
+package com.direwolf20.buildinggadgets2.common.events;
+
+import com.direwolf20.buildinggadgets2.util.datatypes.ConstructionPos;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.Holder;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.flag.FeatureFlagSet;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.LevelReader;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeManager;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.border.WorldBorder;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.ChunkStatus;
+import net.minecraft.world.level.dimension.DimensionType;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.level.material.FluidState;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.shapes.VoxelShape;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The level as it'll be once the construction overlay is done - blocks still growing in are reported as already there. Only used for
+ * canSurvive checks, so a torch or a rail can be built on top of a block that's still animating, like it could on a RenderBlock.
+ */
+class ConstructionLevelReader implements LevelReader {
+    private final Level level;
+
+    ConstructionLevelReader(Level level) {
+        this.level = level;
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        BlockState state = level.getBlockState(pos);
+        if (!state.isAir()) return state;
+        ConstructionPos pending = ConstructionOverlay.get(level, pos);
+        return pending == null || pending.shrinking ? state : pending.state;
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        return getBlockState(pos).getFluidState();
+    }
+
+    @Nullable
+    @Override
+    public BlockEntity getBlockEntity(BlockPos pos) {
+        return level.getBlockEntity(pos);
+    }
+
+    @Nullable
+    @Override
+    public ChunkAccess getChunk(int x, int z, ChunkStatus chunkStatus, boolean requireChunk) {
+        return level.getChunk(x, z, chunkStatus, requireChunk);
+    }
+
+    @Override
+    @Deprecated
+    public boolean hasChunk(int x, int z) {
+        return level.hasChunk(x, z);
+    }
+
+    @Nullable
+    @Override
+    public BlockGetter getChunkForCollisions(int x, int z) {
+        return level.getChunkForCollisions(x, z);
+    }
+
+    @Override
+    public List<VoxelShape> getEntityCollisions(@Nullable Entity entity, AABB area) {
+        return level.getEntityCollisions(entity, area);
+    }
+
+    @Override
+    public int getHeight(Heightmap.Types heightmapType, int x, int z) {
+        return level.getHeight(heightmapType, x, z);
+    }
+
+    @Override
+    public int getSkyDarken() {
+        return level.getSkyDarken();
+    }
+
+    @Override
+    public BiomeManager getBiomeManager() {
+        return level.getBiomeManager();
+    }
+
+    @Override
+    public Holder<Biome> getUncachedNoiseBiome(int x, int y, int z) {
+        return level.getUncachedNoiseBiome(x, y, z);
+    }
+
+    @Override
+    public boolean isClientSide() {
+        return level.isClientSide();
+    }
+
+    @Override
+    @Deprecated
+    public int getSeaLevel() {
+        return level.getSeaLevel();
+    }
+
+    @Override
+    public DimensionType dimensionType() {
+        return level.dimensionType();
+    }
+
+    @Override
+    public RegistryAccess registryAccess() {
+        return level.registryAccess();
+    }
+
+    @Override
+    public FeatureFlagSet enabledFeatures() {
+        return level.enabledFeatures();
+    }
+
+    @Override
+    public float getShade(Direction direction, boolean shade) {
+        return level.getShade(direction, shade);
+    }
+
+    @Override
+    public LevelLightEngine getLightEngine() {
+        return level.getLightEngine();
+    }
+
+    @Override
+    public WorldBorder getWorldBorder() {
+        return level.getWorldBorder();
+    }
+
+    @Override
+    public int getHeight() {
+        return level.getHeight();
+    }
+
+    @Override
+    public int getMinBuildHeight() {
+        return level.getMinBuildHeight();
+    }
+}
@@ -0,0 +1,281 @@
+package com.direwolf20.buildinggadgets2.common.events;
+
+import com.direwolf20.buildinggadgets2.common.network.PacketHandler;
+import com.direwolf20.buildinggadgets2.common.network.packets.PacketConstructionOverlay;
+import com.direwolf20.buildinggadgets2.setup.Config;
+import com.direwolf20.buildinggadgets2.util.GadgetUtils;
+import com.direwolf20.buildinggadgets2.util.datatypes.ConstructionPos;
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectRBTreeMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.RenderShape;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.level.ChunkDataEvent;
+import net.minecraftforge.event.level.ChunkEvent;
+import net.minecraftforge.event.level.ChunkWatchEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Server side of the construction overlay - the alternative to placing a RenderBlock per block. Blocks being built stay air and blocks
+ * being removed are gone right away, while the overlay remembers them per chunk. Whatever got started in a chunk during a tick is synced
+ * in one packet, the client animates it from its start tick, and built blocks are set directly once their animation is over - in the order
+ * they were started, so whatever holds a block up is always placed before it.
+ * Blocks still growing are saved with their chunk, and carry on from where they were when it loads again - their items are already spent.
+ */
+public class ConstructionOverlay {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final HashMap<Level, Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<ConstructionPos>>> overlays = new HashMap<>(); //Level -> ChunkPos -> BlockPos -> ConstructionPos
+    private static final HashMap<Level, Long2ObjectOpenHashMap<ArrayList<ConstructionPos>>> outgoing = new HashMap<>(); //Started this tick, not synced yet
+    private static final HashMap<Level, Long2ObjectRBTreeMap<ArrayList<ConstructionPos>>> schedules = new HashMap<>(); //Level -> finish tick -> ConstructionPos, in the order they were added. May hold stale entries, get() is the truth
+    private static final HashMap<Level, Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<ConstructionPos>>> unloading = new HashMap<>(); //Taken out of chunks being unloaded, until they're saved
+    private static final String NBT_KEY = "buildinggadgets2_construction";
+
+    /**
+     * Whether this state can be animated by the overlay - plain models only, fluids and block entity renderers still need a RenderBlock
+     */
+    public static boolean canUse(BlockState state) {
+        return Config.CONSTRUCTION_OVERLAY.get() && state.getFluidState().isEmpty() && state.getRenderShape() == RenderShape.MODEL;
+    }
+
+    public static ConstructionPos get(Level level, BlockPos pos) {
+        Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<ConstructionPos>> chunks = overlays.get(level);
+        if (chunks == null) return null;
+        Long2ObjectOpenHashMap<ConstructionPos> chunk = chunks.get(ChunkPos.asLong(pos));
+        return chunk == null ? null : chunk.get(pos.asLong());
+    }
+
+    /**
+     * Whether the state can survive at pos once everything growing in around it is done - a torch on a block that's still animating, for example.
+     * Only worth asking when the plain canSurvive check failed.
+     */
+    public static boolean canSurviveOnceBuilt(Level level, BlockPos pos, BlockState state) {
+        return overlays.containsKey(level) && state.canSurvive(new ConstructionLevelReader(level), pos);
+    }
+
+    /**
+     * Starts (or replaces) the animation at placement.pos. The caller is responsible for the world already being air there.
+     */
+    public static void add(Level level, ConstructionPos placement) {
+        long chunkPos = ChunkPos.asLong(placement.pos);
+        overlays.computeIfAbsent(level, k -> new Long2ObjectOpenHashMap<>()).computeIfAbsent(chunkPos, k -> new Long2ObjectOpenHashMap<>()).put(placement.pos.asLong(), placement);
+        outgoing.computeIfAbsent(level, k -> new Long2ObjectOpenHashMap<>()).computeIfAbsent(chunkPos, k -> new ArrayList<>()).add(placement);
+        schedule(level, placement, placement.getFinishTick());
+        level.getChunkAt(placement.pos).setUnsaved(true); //So the next save picks it up
+    }
+
+    /**
+     * Drops the animation at pos without finishing it - only used when it's about to be replaced
+     */
+    public static void remove(Level level, BlockPos pos) {
+        Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<ConstructionPos>> chunks = overlays.get(level);
+        if (chunks == null) return;
+        long chunkPos = ChunkPos.asLong(pos);
+        Long2ObjectOpenHashMap<ConstructionPos> chunk = chunks.get(chunkPos);
+        if (chunk == null) return;
+        chunk.remove(pos.asLong());
+        if (chunk.isEmpty())
+            chunks.remove(chunkPos);
+        if (chunks.isEmpty())
+            overlays.remove(level);
+    }
+
+    private static void schedule(Level level, ConstructionPos placement, long finishTick) {
+        schedules.computeIfAbsent(level, k -> new Long2ObjectRBTreeMap<>()).computeIfAbsent(finishTick, k -> new ArrayList<>()).add(placement);
+    }
+
+    @SubscribeEvent
+    public static void handleTickEndEvent(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+        if (!outgoing.isEmpty())
+            sendOutgoing();
+        if (schedules.isEmpty()) return;
+
+        //Collect everything that's due first - setting blocks can load neighbouring chunks, which adds their placements to the maps we'd be walking
+        ArrayList<Level> dueLevels = new ArrayList<>();
+        ArrayList<ConstructionPos> due = new ArrayList<>();
+        for (Map.Entry<Level, Long2ObjectRBTreeMap<ArrayList<ConstructionPos>>> entry : schedules.entrySet()) {
+            Level level = entry.getKey();
+            long gameTime = level.getGameTime();
+            Long2ObjectRBTreeMap<ArrayList<ConstructionPos>> ticks = entry.getValue();
+            while (!ticks.isEmpty() && ticks.firstLongKey() <= gameTime) {
+                for (ConstructionPos placement : ticks.remove(ticks.firstLongKey())) {
+                    if (get(level, placement.pos) != placement) continue; //Replaced, or its chunk unloaded, since
+                    dueLevels.add(level);
+                    due.add(placement);
+                }
+            }
+        }
+        schedules.values().removeIf(Map::isEmpty);
+
+        for (int i = 0; i < due.size(); i++) {
+            Level level = dueLevels.get(i);
+            ConstructionPos placement = due.get(i);
+            if (get(level, placement.pos) != placement) continue; //Replaced by something earlier in this batch
+            if (!level.hasChunk(SectionPos.blockToSectionCoord(placement.pos.getX()), SectionPos.blockToSectionCoord(placement.pos.getZ())) || !finish(level, placement)) {
+                schedule(level, placement, level.getGameTime() + 1); //Chunk is loaded back in but not ready yet, or its support isn't done - try again next tick
+                continue;
+            }
+            remove(level, placement.pos);
+        }
+    }
+
+    private static void sendOutgoing() {
+        for (Map.Entry<Level, Long2ObjectOpenHashMap<ArrayList<ConstructionPos>>> entry : outgoing.entrySet()) {
+            Level level = entry.getKey();
+            for (Long2ObjectMap.Entry<ArrayList<ConstructionPos>> chunk : entry.getValue().long2ObjectEntrySet()) {
+                long chunkPos = chunk.getLongKey();
+                LevelChunk levelChunk = level.getChunkSource().getChunkNow(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos));
+                if (levelChunk != null) //Unloaded since, so nobody is tracking it - they get caught up by onChunkWatch if it comes back
+                    PacketHandler.sendToTrackingChunk(new PacketConstructionOverlay(chunk.getValue()), levelChunk);
+            }
+        }
+        outgoing.clear();
+    }
+
+    /**
+     * Sets the real block once a growing animation is over - shrinking ones were already removed from the world when they started.
+     * Returns false if it has to wait, because what it stands on is still growing in.
+     */
+    private static boolean finish(Level level, ConstructionPos placement) {
+        if (placement.shrinking) return true;
+        BlockPos pos = placement.pos;
+        boolean replaceable = level.getBlockState(pos).canBeReplaced();
+        boolean canSurvive = placement.state.canSurvive(level, pos);
+        if (replaceable && !canSurvive && canSurviveOnceBuilt(level, pos, placement.state))
+            return false;
+        if (!replaceable || !canSurvive) { //Something else got placed here meanwhile, or it lost its support - drop it instead
+            for (ItemStack returnedItem : GadgetUtils.getDropsForBlockState((ServerLevel) level, pos, placement.state, null)) {
+                ItemEntity itementity = new ItemEntity(level, pos.getX(), pos.getY(), pos.getZ(), returnedItem);
+                itementity.setPickUpDelay(40);
+                level.addFreshEntity(itementity);
+            }
+            return true;
+        }
+        BlockState adjustedState = Block.updateFromNeighbourShapes(placement.state, level, pos); //Same as RenderBlockBE.setRealBlock
+        level.setBlockAndUpdate(pos, adjustedState);
+        if (placement.blockEntityData != null) {
+            BlockEntity blockEntity = level.getBlockEntity(pos);
+            try {
+                if (blockEntity != null)
+                    blockEntity.load(placement.blockEntityData);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to restore tile data for block at: {} with NBT: {}. Consider adding it to the blacklist", pos, placement.blockEntityData, e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A player started tracking a chunk mid-animation, so catch them up on it
+     */
+    @SubscribeEvent
+    public static void onChunkWatch(ChunkWatchEvent.Watch event) {
+        Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<ConstructionPos>> chunks = overlays.get(event.getLevel());
+        if (chunks == null) return;
+        Long2ObjectOpenHashMap<ConstructionPos> chunk = chunks.get(event.getPos().toLong());
+        if (chunk != null && !chunk.isEmpty())
+            PacketHandler.sendTo(new PacketConstructionOverlay(new ArrayList<>(chunk.values())), event.getPlayer());
+    }
+
+    /**
+     * The chunk is about to be saved and dropped - set its animations aside for that save, rather than finishing them and loading it again.
+     * Shrinking ones are only for show, their blocks are long gone, so they're just forgotten.
+     */
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        if (!(event.getLevel() instanceof ServerLevel level)) return;
+        Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<ConstructionPos>> chunks = overlays.get(level);
+        if (chunks == null) return;
+        ChunkAccess chunkAccess = event.getChunk();
+        long chunkPos = chunkAccess.getPos().toLong();
+        Long2ObjectOpenHashMap<ConstructionPos> chunk = chunks.remove(chunkPos);
+        if (chunks.isEmpty())
+            overlays.remove(level);
+        if (chunk == null) return;
+        chunk.values().removeIf(placement -> placement.shrinking);
+        if (chunk.isEmpty()) return;
+        unloading.computeIfAbsent(level, k -> new Long2ObjectOpenHashMap<>()).put(chunkPos, chunk);
+        chunkAccess.setUnsaved(true); //Saving skips chunks that haven't changed since the last save
+    }
+
+    /**
+     * Writes the chunk's growing blocks next to its block data, so they're saved (and lost in a crash) together with the air they're replacing
+     */
+    @SubscribeEvent
+    public static void onChunkSave(ChunkDataEvent.Save event) {
+        if (!(event.getLevel() instanceof ServerLevel level)) return;
+        long chunkPos = event.getChunk().getPos().toLong();
+        Long2ObjectOpenHashMap<ConstructionPos> chunk = null;
+        Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<ConstructionPos>> unloadingChunks = unloading.get(level);
+        if (unloadingChunks != null) {
+            chunk = unloadingChunks.remove(chunkPos);
+            if (unloadingChunks.isEmpty())
+                unloading.remove(level);
+        }
+        if (chunk == null) {
+            Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<ConstructionPos>> chunks = overlays.get(level);
+            if (chunks != null)
+                chunk = chunks.get(chunkPos);
+        }
+        if (chunk == null) return;
+        ListTag list = new ListTag();
+        for (ConstructionPos placement : chunk.values()) {
+            if (!placement.shrinking)
+                list.add(placement.getTag());
+        }
+        if (!list.isEmpty())
+            event.getData().put(NBT_KEY, list);
+    }
+
+    /**
+     * Picks up where onChunkSave left off. They're finished by the tick once the chunk is fully loaded, and players get them when they start watching it.
+     */
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkDataEvent.Load event) {
+        if (!(event.getLevel() instanceof ServerLevel level) || !event.getData().contains(NBT_KEY, Tag.TAG_LIST)) return;
+        ListTag list = event.getData().getList(NBT_KEY, Tag.TAG_COMPOUND);
+        Long2ObjectOpenHashMap<ConstructionPos> chunk = overlays.computeIfAbsent(level, k -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(event.getChunk().getPos().toLong(), k -> new Long2ObjectOpenHashMap<>());
+        for (int i = 0; i < list.size(); i++) {
+            ConstructionPos placement = new ConstructionPos(list.getCompound(i));
+            if (placement.state.isAir()) continue; //Its block is gone from the registry
+            if (chunk.putIfAbsent(placement.pos.asLong(), placement) == null)
+                schedule(level, placement, placement.getFinishTick());
+        }
+        if (chunk.isEmpty())
+            remove(level, event.getChunk().getPos().getWorldPosition());
+    }
+
+    /**
+     * Everything still in progress was saved with its chunk, so just forget it - the next server (or world) starts empty
+     */
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        overlays.clear();
+        outgoing.clear();
+        schedules.clear();
+        unloading.clear();
+    }
+}
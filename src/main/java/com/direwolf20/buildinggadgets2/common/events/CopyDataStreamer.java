@@ -0,0 +1,107 @@
+package com.direwolf20.buildinggadgets2.common.events;
+
+import com.direwolf20.buildinggadgets2.common.network.PacketHandler;
+import com.direwolf20.buildinggadgets2.common.network.packets.PacketSendCopyData;
+import io.netty.buffer.ByteBuf;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+import java.util.*;
+
+/**
+ * Streams copy data to clients a few chunks at a time, instead of pushing a whole buffer into the network in one go.
+ * Each player gets at most CHUNKS_PER_TICK chunks per tick, and never more than WINDOW_SIZE chunks the client hasn't acknowledged yet.
+ */
+public class CopyDataStreamer {
+    private static final int CHUNKS_PER_TICK = 4;
+    private static final int WINDOW_SIZE = 8;
+    private static final HashMap<UUID, LinkedHashMap<UUID, Transfer>> transfers = new HashMap<>(); //PlayerUUID -> GadgetUUID -> Transfer, in the order they were queued
+
+    private static class Transfer {
+        private final UUID copyUUID;
+        private final List<ByteBuf> chunks;
+        private int nextChunk = 0; //Next chunk to send
+        private int ackedChunks = 0; //Chunks the client confirmed it received
+
+        private Transfer(UUID copyUUID, List<ByteBuf> chunks) {
+            this.copyUUID = copyUUID;
+            this.chunks = chunks;
+        }
+
+        private void release() {
+            for (int i = nextChunk; i < chunks.size(); i++)
+                chunks.get(i).release();
+            nextChunk = chunks.size();
+        }
+    }
+
+    /**
+     * Queues the chunks for sending - takes ownership of them. Replaces anything still queued for the same gadget, since the client
+     * starts over whenever a transfer's first chunk arrives anyway.
+     */
+    public static void queue(ServerPlayer player, UUID gadgetUUID, UUID copyUUID, List<ByteBuf> chunks) {
+        Transfer old = transfers.computeIfAbsent(player.getUUID(), k -> new LinkedHashMap<>()).put(gadgetUUID, new Transfer(copyUUID, chunks));
+        if (old != null) old.release();
+    }
+
+    /**
+     * Called when the client acknowledges a chunk - opens the window back up
+     */
+    public static void acknowledge(ServerPlayer player, UUID gadgetUUID, UUID copyUUID, int position) {
+        Map<UUID, Transfer> playerTransfers = transfers.get(player.getUUID());
+        if (playerTransfers == null) return;
+        Transfer transfer = playerTransfers.get(gadgetUUID);
+        if (transfer == null || !transfer.copyUUID.equals(copyUUID)) return; //An ack for a transfer that's since been replaced
+        transfer.ackedChunks = Math.max(transfer.ackedChunks, Math.min(position + 1, transfer.nextChunk));
+    }
+
+    @SubscribeEvent
+    public static void handleTickEndEvent(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || transfers.isEmpty()) return;
+        Iterator<Map.Entry<UUID, LinkedHashMap<UUID, Transfer>>> iterator = transfers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, LinkedHashMap<UUID, Transfer>> entry = iterator.next();
+            ServerPlayer player = event.getServer().getPlayerList().getPlayer(entry.getKey());
+            if (player == null) { //Logged out mid transfer
+                entry.getValue().values().forEach(Transfer::release);
+                iterator.remove();
+                continue;
+            }
+            sendChunks(player, entry.getValue());
+            if (entry.getValue().isEmpty())
+                iterator.remove();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        Map<UUID, Transfer> playerTransfers = transfers.remove(event.getEntity().getUUID());
+        if (playerTransfers != null)
+            playerTransfers.values().forEach(Transfer::release);
+    }
+
+    /**
+     * Sends this player's transfers in the order they were queued, within the per tick limit and each transfer's window
+     */
+    private static void sendChunks(ServerPlayer player, LinkedHashMap<UUID, Transfer> playerTransfers) {
+        int budget = CHUNKS_PER_TICK;
+        Iterator<Map.Entry<UUID, Transfer>> iterator = playerTransfers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, Transfer> entry = iterator.next();
+            Transfer transfer = entry.getValue();
+            int total = transfer.chunks.size();
+            while (budget > 0 && transfer.nextChunk < total && transfer.nextChunk - transfer.ackedChunks < WINDOW_SIZE) {
+                ByteBuf chunk = transfer.chunks.get(transfer.nextChunk);
+                PacketHandler.sendTo(new PacketSendCopyData(entry.getKey(), transfer.copyUUID, total, transfer.nextChunk, chunk), player);
+                chunk.release(); //Encoded when sent, so we're done with it
+                transfer.nextChunk++;
+                budget--;
+            }
+            if (transfer.ackedChunks >= total)
+                iterator.remove(); //Fully received
+            if (budget == 0) return;
+        }
+    }
+}
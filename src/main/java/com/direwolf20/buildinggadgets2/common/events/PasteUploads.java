@@ -0,0 +1,143 @@
+package com.direwolf20.buildinggadgets2.common.events;
+
+import com.direwolf20.buildinggadgets2.util.datatypes.PasteData;
+import com.mojang.logging.LogUtils;
+import io.netty.buffer.ByteBuf;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import org.slf4j.Logger;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tracks template uploads (PacketSendPasteBatches) while their chunks come in. Everything a client sends is bounded: chunk size and count
+ * per upload, concurrent uploads and buffered bytes per player, and how long an upload may sit idle before it's thrown away.
+ */
+public class PasteUploads {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int MAX_UPLOAD_BYTES = 8 * 1024 * 1024; //Compressed size of a single upload
+    private static final int MAX_CHUNKS = MAX_UPLOAD_BYTES / PasteData.SERVERBOUND_CHUNK_SIZE + 1;
+    private static final int MAX_PLAYER_BYTES = 16 * 1024 * 1024; //Compressed bytes buffered per player, across all their uploads
+    private static final int MAX_PLAYER_UPLOADS = 2;
+    private static final int IDLE_TIMEOUT_TICKS = 30 * 20;
+    private static final long MAX_DECODED_BYTES = 64L * 1024 * 1024; //NbtAccounter limit when decompressing a finished upload
+    private static final long MAX_VOLUME = 1_000_000; //Largest AABB we'll decode - well above what a copy can produce, to leave room for imported templates
+    private static final HashMap<UUID, HashMap<UUID, Upload>> uploads = new HashMap<>(); //PlayerUUID -> CopyUUID -> Upload
+
+    private static class Upload {
+        private final PasteData pasteData;
+        private int bytes = 0;
+        private int lastTick;
+
+        private Upload(int totalChunks, int tick) {
+            this.pasteData = new PasteData(totalChunks);
+            this.lastTick = tick;
+        }
+    }
+
+    /**
+     * Adds a chunk, taking ownership of it. Returns the upload once its last chunk arrives (the caller then owns it), otherwise null.
+     * Anything out of bounds drops the whole upload.
+     */
+    public static PasteData addChunk(ServerPlayer player, UUID copyUUID, int position, int totalChunks, ByteBuf chunk) {
+        HashMap<UUID, Upload> playerUploads = uploads.computeIfAbsent(player.getUUID(), k -> new HashMap<>());
+        Upload upload = playerUploads.get(copyUUID);
+        String problem = null;
+        if (totalChunks < 1 || totalChunks > MAX_CHUNKS || position < 0 || position >= totalChunks)
+            problem = "invalid chunk " + position + " of " + totalChunks;
+        else if (chunk.readableBytes() > PasteData.SERVERBOUND_CHUNK_SIZE)
+            problem = "oversized chunk of " + chunk.readableBytes() + " bytes";
+        else if (upload != null && upload.pasteData.getTotalChunks() != totalChunks)
+            problem = "chunk count changed from " + upload.pasteData.getTotalChunks() + " to " + totalChunks;
+        else if (upload == null && playerUploads.size() >= MAX_PLAYER_UPLOADS)
+            problem = "too many concurrent uploads";
+        else if (getPlayerBytes(playerUploads) + chunk.readableBytes() > MAX_PLAYER_BYTES || (upload != null && upload.bytes + chunk.readableBytes() > MAX_UPLOAD_BYTES))
+            problem = "upload quota exceeded";
+
+        if (problem != null) {
+            LOGGER.warn("Rejected template upload {} from {}: {}", copyUUID, player.getName().getString(), problem);
+            chunk.release();
+            if (upload != null) {
+                upload.pasteData.release();
+                playerUploads.remove(copyUUID);
+            }
+            if (playerUploads.isEmpty()) uploads.remove(player.getUUID());
+            return null;
+        }
+
+        if (upload == null) {
+            upload = new Upload(totalChunks, player.server.getTickCount());
+            playerUploads.put(copyUUID, upload);
+        }
+        upload.bytes += chunk.readableBytes();
+        upload.lastTick = player.server.getTickCount();
+        upload.pasteData.addChunk(position, chunk);
+        if (!upload.pasteData.isComplete())
+            return null;
+
+        playerUploads.remove(copyUUID);
+        if (playerUploads.isEmpty()) uploads.remove(player.getUUID());
+        return upload.pasteData;
+    }
+
+    /**
+     * Assembles and decompresses a finished upload, refusing anything that decodes too large or claims an oversized area - before
+     * any per-block data gets allocated for it. Safe to call off the server thread.
+     */
+    public static CompoundTag decode(PasteData pasteData) {
+        ByteBuf payload = pasteData.assemble();
+        CompoundTag tag;
+        try {
+            tag = PasteData.decompress(payload, MAX_DECODED_BYTES);
+        } finally {
+            payload.release();
+        }
+        if (tag.contains("startpos") && tag.contains("endpos")) {
+            BlockPos start = NbtUtils.readBlockPos(tag.getCompound("startpos"));
+            BlockPos end = NbtUtils.readBlockPos(tag.getCompound("endpos"));
+            long volume = (Math.abs((long) end.getX() - start.getX()) + 1) * (Math.abs((long) end.getY() - start.getY()) + 1) * (Math.abs((long) end.getZ() - start.getZ()) + 1);
+            if (volume > MAX_VOLUME)
+                throw new IllegalArgumentException("Template upload covers " + volume + " blocks, the limit is " + MAX_VOLUME);
+        }
+        return tag;
+    }
+
+    private static int getPlayerBytes(HashMap<UUID, Upload> playerUploads) {
+        int bytes = 0;
+        for (Upload upload : playerUploads.values())
+            bytes += upload.bytes;
+        return bytes;
+    }
+
+    @SubscribeEvent
+    public static void handleTickEndEvent(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || uploads.isEmpty()) return;
+        int tick = event.getServer().getTickCount();
+        for (HashMap<UUID, Upload> playerUploads : uploads.values()) {
+            Iterator<Upload> iterator = playerUploads.values().iterator();
+            while (iterator.hasNext()) {
+                Upload upload = iterator.next();
+                if (tick - upload.lastTick > IDLE_TIMEOUT_TICKS) { //Client stopped sending - give up on it
+                    upload.pasteData.release();
+                    iterator.remove();
+                }
+            }
+        }
+        uploads.values().removeIf(Map::isEmpty);
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        HashMap<UUID, Upload> playerUploads = uploads.remove(event.getEntity().getUUID());
+        if (playerUploads != null)
+            playerUploads.values().forEach(upload -> upload.pasteData.release());
+    }
+}
@@ -0,0 +1,98 @@
+package com.direwolf20.buildinggadgets2.common.events;
+
+import com.direwolf20.buildinggadgets2.common.blockentities.RenderBlockBE;
+import com.direwolf20.buildinggadgets2.setup.Registration;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Drives every server side RenderBlockBE from one place, instead of each of them ticking on its own. They're kept in a timing wheel per level,
+ * slotted by the tick their animation finishes on - so each tick only looks at the blocks that are actually done.
+ * All blocks finishing in the same tick are placed first, and their neighbours are only updated once they're all in place.
+ */
+public class RenderBlockScheduler {
+    private static final int SLOTS = 64; //Power of two, and longer than the longest animation (40 ticks)
+    private static final HashMap<Level, Wheel> wheels = new HashMap<>();
+
+    private static class Wheel {
+        @SuppressWarnings("unchecked")
+        private final ArrayList<RenderBlockBE>[] slots = new ArrayList[SLOTS];
+        private long lastTick; //Last tick that was processed
+
+        private Wheel(long lastTick) {
+            this.lastTick = lastTick;
+            for (int i = 0; i < SLOTS; i++)
+                slots[i] = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Queues the block entity to finish on the given tick. Anything it was scheduled for before is ignored from now on.
+     */
+    public static void schedule(RenderBlockBE be, long finishTick) {
+        Level level = be.getLevel();
+        Wheel wheel = wheels.computeIfAbsent(level, k -> new Wheel(level.getGameTime() - 1));
+        finishTick = Math.max(finishTick, wheel.lastTick + 1); //Already overdue, so finish it the next time we run
+        finishTick = Math.min(finishTick, wheel.lastTick + SLOTS); //Can't happen with the current animations, but a longer one mustn't wrap around
+        if (be.scheduledTick == finishTick) return; //Already in that slot
+        be.scheduledTick = finishTick;
+        wheel.slots[(int) (finishTick & (SLOTS - 1))].add(be);
+    }
+
+    @SubscribeEvent
+    public static void handleTickEndEvent(TickEvent.LevelTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || event.side.isClient() || wheels.isEmpty()) return;
+        Wheel wheel = wheels.get(event.level);
+        if (wheel == null) return;
+        long gameTime = event.level.getGameTime();
+        ArrayList<BlockPos> placedPos = new ArrayList<>();
+        ArrayList<BlockState> placedStates = new ArrayList<>();
+        long from = wheel.lastTick;
+        long ticks = Math.min(gameTime - from, SLOTS);
+        wheel.lastTick = gameTime; //Set first, so anything scheduled while we're finishing lands in a slot we haven't walked yet
+        for (long i = 1; i <= ticks; i++) {
+            int slot = (int) ((from + i) & (SLOTS - 1));
+            ArrayList<RenderBlockBE> due = wheel.slots[slot];
+            wheel.slots[slot] = new ArrayList<>(); //Finishing an exchange schedules its second half, so don't add to the list we're walking
+            for (RenderBlockBE be : due) {
+                if (be.isRemoved() || be.scheduledTick > gameTime || (be.scheduledTick & (SLOTS - 1)) != slot)
+                    continue; //Gone, or rescheduled since
+                be.scheduledTick = -1;
+                BlockState placed = be.finishAnimation();
+                if (placed != null) {
+                    placedPos.add(be.getBlockPos());
+                    placedStates.add(placed);
+                }
+            }
+        }
+
+        for (int i = 0; i < placedPos.size(); i++) //Now that the whole batch is in place, let the neighbours know
+            updateNeighbours(event.level, placedPos.get(i), placedStates.get(i));
+    }
+
+    /**
+     * What Level.setBlock would have done with Block.UPDATE_ALL - finishAnimation places blocks without neighbour updates so they can be done here together.
+     * Like vanilla, the shape updates themselves only pass UPDATE_CLIENTS on, with the default recursion limit.
+     */
+    private static void updateNeighbours(Level level, BlockPos pos, BlockState state) {
+        if (level.getBlockState(pos) != state) return; //Changed again by an earlier neighbour update
+        level.blockUpdated(pos, Registration.RenderBlock.get());
+        if (state.hasAnalogOutputSignal())
+            level.updateNeighbourForOutputSignal(pos, state.getBlock());
+        state.updateNeighbourShapes(level, pos, Block.UPDATE_CLIENTS);
+        state.updateIndirectNeighbourShapes(level, pos, Block.UPDATE_CLIENTS);
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        wheels.clear(); //Block entities save their current size, and get scheduled again when they load
+    }
+}
@@ -0,0 +1,49 @@
+package com.direwolf20.buildinggadgets2.common.events;
+
+import com.direwolf20.buildinggadgets2.common.blockentities.RenderBlockBE;
+import com.direwolf20.buildinggadgets2.common.network.PacketHandler;
+import com.direwolf20.buildinggadgets2.common.network.packets.PacketRenderBlockSync;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+import java.util.HashMap;
+
+/**
+ * Collects the RenderBlockBEs that changed, and syncs them with one PacketRenderBlockSync per chunk.
+ * Sent at the end of the level tick - that's after the chunk has broadcast its block changes, so a freshly placed RenderBlock already
+ * has its block entity on the client by the time the data for it arrives.
+ */
+public class RenderBlockSync {
+    private static final HashMap<Level, Long2ObjectOpenHashMap<ReferenceLinkedOpenHashSet<RenderBlockBE>>> dirty = new HashMap<>(); //Level -> ChunkPos -> changed RenderBlockBEs
+
+    public static void queue(RenderBlockBE be) {
+        dirty.computeIfAbsent(be.getLevel(), k -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(ChunkPos.asLong(be.getBlockPos()), k -> new ReferenceLinkedOpenHashSet<>())
+                .add(be);
+    }
+
+    @SubscribeEvent
+    public static void handleTickEndEvent(TickEvent.LevelTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || event.side.isClient() || dirty.isEmpty()) return;
+        Long2ObjectOpenHashMap<ReferenceLinkedOpenHashSet<RenderBlockBE>> chunks = dirty.remove(event.level);
+        if (chunks == null) return;
+        for (Long2ObjectMap.Entry<ReferenceLinkedOpenHashSet<RenderBlockBE>> entry : chunks.long2ObjectEntrySet()) {
+            ReferenceLinkedOpenHashSet<RenderBlockBE> blockEntities = entry.getValue();
+            blockEntities.removeIf(RenderBlockBE::isRemoved); //Already finished and replaced by the real block
+            if (blockEntities.isEmpty()) continue;
+            long chunkPos = entry.getLongKey();
+            PacketHandler.sendToTrackingChunk(new PacketRenderBlockSync(blockEntities), event.level.getChunk(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos)));
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        dirty.clear();
+    }
+}
@@ -2,15 +2,21 @@ package com.direwolf20.buildinggadgets2.common.events;
 
 import com.direwolf20.buildinggadgets2.util.DimBlockPos;
 import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
+import com.direwolf20.buildinggadgets2.util.datatypes.StatePosQueue;
 import com.direwolf20.buildinggadgets2.util.datatypes.TagPos;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.util.Mth;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.phys.AABB;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.UUID;
 
 public class ServerBuildList {
@@ -23,30 +29,36 @@ public class ServerBuildList {
     }
 
     public Level level;
-    public ArrayList<StatePos> statePosList;
+    public StatePosQueue statePosList = new StatePosQueue();
     public ArrayList<TagPos> teData;
+    private ArrayList<TagPos> indexedTEData; //The teData list teIndex was built for
+    private Long2IntOpenHashMap teIndex; //Packed BlockPos -> index into teData
     public byte renderType;
     public UUID playerUUID;
     public int originalSize;
     public ArrayList<StatePos> actuallyBuildList = new ArrayList<>();
+    private final Long2ObjectOpenHashMap<BlockState> actuallyBuiltIndex = new Long2ObjectOpenHashMap<>(); //Packed BlockPos -> State, kept in sync with actuallyBuildList
+    private ArrayList<StatePos> resumeUndoList; //An undo list left over from an interrupted build, and its index below
+    private Long2ObjectOpenHashMap<BlockState> resumeUndoIndex;
     public boolean needItems;
     public boolean returnItems;
     public ItemStack gadget;
     public UUID buildUUID;
     public BuildType buildType;
     public boolean dropContents;
-    public ArrayList<BlockPos> retryList = new ArrayList<>();
+    public LongOpenHashSet retryList = new LongOpenHashSet(); //Packed BlockPos of anything we've already requeued once
     public BlockPos cutStart = BlockPos.ZERO;
+    private StatePos[] cutBuffer; //Dense x/y/z array over the cut area (relative to cutStart), holding the same StatePos objects as actuallyBuildList
+    private BlockPos cutBufferMin = BlockPos.ZERO;
+    private int cutSizeX, cutSizeY, cutSizeZ;
     public BlockPos lookingAt = BlockPos.ZERO;
     public DimBlockPos boundPos;
     public int direction;
 
-    public ServerBuildList(Level level, ArrayList<StatePos> statePosList, byte renderType, UUID playerUUID, boolean needItems, boolean returnItems, UUID buildUUID, ItemStack gadget, BuildType buildType, boolean dropContents, BlockPos lookingAt, DimBlockPos boundPos, int direction) {
+    public ServerBuildList(Level level, byte renderType, UUID playerUUID, boolean needItems, boolean returnItems, UUID buildUUID, ItemStack gadget, BuildType buildType, boolean dropContents, BlockPos lookingAt, DimBlockPos boundPos, int direction) {
         this.level = level;
-        this.statePosList = statePosList;
         this.renderType = renderType;
         this.playerUUID = playerUUID;
-        this.originalSize = statePosList.size();
         this.needItems = needItems;
         this.buildUUID = buildUUID;
         this.returnItems = returnItems;
@@ -60,10 +72,67 @@ public class ServerBuildList {
 
     public void addToBuiltList(StatePos statePos) {
         this.actuallyBuildList.add(statePos);
+        this.actuallyBuiltIndex.putIfAbsent(statePos.pos.asLong(), statePos.state);
+    }
+
+    /**
+     * Equivalent to undoList.contains(statePos), without the linear scan. The undo list is either our own actuallyBuildList (once
+     * we've placed something) or the one persisted by an interrupted build, which gets indexed once the first time we see it.
+     */
+    public boolean undoListContains(ArrayList<StatePos> undoList, StatePos statePos) {
+        if (undoList == null || undoList.isEmpty()) return false;
+        Long2ObjectOpenHashMap<BlockState> index;
+        if (undoList == actuallyBuildList) {
+            index = actuallyBuiltIndex;
+        } else {
+            if (undoList != resumeUndoList) {
+                resumeUndoList = undoList;
+                resumeUndoIndex = new Long2ObjectOpenHashMap<>(undoList.size());
+                for (StatePos entry : undoList)
+                    resumeUndoIndex.putIfAbsent(entry.pos.asLong(), entry.state);
+            }
+            index = resumeUndoIndex;
+        }
+        return statePos.state.equals(index.get(statePos.pos.asLong()));
+    }
+
+    /**
+     * Sizes the cut buffer to the cut area - call once cutStart is set, before filling actuallyBuildList via addToCutBuffer
+     */
+    public void initCutBuffer(AABB area) {
+        BlockPos min = new BlockPos(Mth.floor(area.minX), Mth.floor(area.minY), Mth.floor(area.minZ));
+        BlockPos max = new BlockPos(Mth.floor(area.maxX), Mth.floor(area.maxY), Mth.floor(area.maxZ));
+        cutBufferMin = min.subtract(cutStart);
+        cutSizeX = max.getX() - min.getX() + 1;
+        cutSizeY = max.getY() - min.getY() + 1;
+        cutSizeZ = max.getZ() - min.getZ() + 1;
+        cutBuffer = new StatePos[cutSizeX * cutSizeY * cutSizeZ];
+        actuallyBuildList.ensureCapacity(cutBuffer.length);
+    }
+
+    public void addToCutBuffer(StatePos statePos) {
+        addToBuiltList(statePos);
+        int index = getCutIndex(statePos.pos);
+        if (index != -1)
+            cutBuffer[index] = statePos;
+    }
+
+    private int getCutIndex(BlockPos relativePos) {
+        if (cutBuffer == null) return -1;
+        int x = relativePos.getX() - cutBufferMin.getX();
+        int y = relativePos.getY() - cutBufferMin.getY();
+        int z = relativePos.getZ() - cutBufferMin.getZ();
+        if (x < 0 || y < 0 || z < 0 || x >= cutSizeX || y >= cutSizeY || z >= cutSizeZ) return -1;
+        return x + cutSizeX * (y + cutSizeY * z);
     }
 
     public void updateActuallyBuiltList(StatePos statePos) {
-        for (StatePos entry : actuallyBuildList) {
+        int index = getCutIndex(statePos.pos);
+        if (index != -1 && cutBuffer[index] != null) {
+            cutBuffer[index].state = statePos.state;
+            return;
+        }
+        for (StatePos entry : actuallyBuildList) { //Only if this position wasn't part of the original cut area, which shouldn't happen
             if (entry.pos.equals(statePos.pos)) {
                 entry.state = statePos.state;
                 break;
@@ -71,18 +140,28 @@ public class ServerBuildList {
         }
     }
 
+    /**
+     * Finds and removes the TE data for this position. teData is indexed by position on first use, and entries are removed by swapping
+     * in the last element, so teData stays the same list we persist via BG2Data.addToTEMap - just in no particular order.
+     */
     public CompoundTag getTagForPos(BlockPos pos) {
         CompoundTag compoundTag = new CompoundTag();
         if (teData == null || teData.isEmpty()) return compoundTag;
-        BlockPos blockPos = pos.subtract(lookingAt);
-        Iterator<TagPos> iterator = teData.iterator();
-        while (iterator.hasNext()) {
-            TagPos data = iterator.next();
-            if (data.pos.equals(blockPos)) {
-                compoundTag = data.tag;
-                iterator.remove();
-                break;
-            }
+        if (indexedTEData != teData) {
+            indexedTEData = teData;
+            teIndex = new Long2IntOpenHashMap(teData.size());
+            teIndex.defaultReturnValue(-1);
+            for (int i = 0; i < teData.size(); i++)
+                teIndex.putIfAbsent(teData.get(i).pos.asLong(), i);
+        }
+        int index = teIndex.remove(pos.subtract(lookingAt).asLong());
+        if (index == -1) return compoundTag;
+        compoundTag = teData.get(index).tag;
+        int lastIndex = teData.size() - 1;
+        TagPos last = teData.remove(lastIndex);
+        if (index != lastIndex) {
+            teData.set(index, last);
+            teIndex.replace(last.pos.asLong(), lastIndex, index);
         }
         return compoundTag;
     }
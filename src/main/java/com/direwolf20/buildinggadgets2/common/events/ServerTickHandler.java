@@ -3,11 +3,14 @@ package com.direwolf20.buildinggadgets2.common.events;
 import com.direwolf20.buildinggadgets2.common.blockentities.RenderBlockBE;
 import com.direwolf20.buildinggadgets2.common.blocks.RenderBlock;
 import com.direwolf20.buildinggadgets2.common.worlddata.BG2Data;
+import com.direwolf20.buildinggadgets2.setup.Config;
 import com.direwolf20.buildinggadgets2.setup.Registration;
 import com.direwolf20.buildinggadgets2.util.DimBlockPos;
 import com.direwolf20.buildinggadgets2.util.GadgetNBT;
 import com.direwolf20.buildinggadgets2.util.GadgetUtils;
+import com.direwolf20.buildinggadgets2.util.datatypes.ConstructionPos;
 import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
+import com.direwolf20.buildinggadgets2.util.datatypes.StatePosQueue;
 import com.direwolf20.buildinggadgets2.util.datatypes.TagPos;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
@@ -15,11 +18,13 @@ import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.material.Fluid;
 import net.minecraft.world.level.material.FluidState;
+import net.minecraft.world.phys.AABB;
 import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fluids.FluidStack;
@@ -37,6 +42,8 @@ public class ServerTickHandler {
     public static void handleTickEndEvent(TickEvent.ServerTickEvent event) {
         if (event.phase != TickEvent.Phase.END || buildMap.isEmpty()) return;
 
+        //Group the active builds by player, so the tick budget is split per player rather than per build
+        Map<UUID, List<ServerBuildList>> buildsByPlayer = new LinkedHashMap<>();
         for (UUID uuid : buildMap.keySet()) {
             ServerBuildList serverBuildList = buildMap.get(uuid);
             Player player = event.getServer().getPlayerList().getPlayer(serverBuildList.playerUUID);
@@ -44,30 +51,62 @@ public class ServerTickHandler {
                 stopBuilding(uuid); //Clear the remaining list of things to build, removing it after this loop in removeEmptyLists
                 continue;
             }
-            int min = serverBuildList.originalSize < 60 ? 1 : 5;
-            int max = 50;
-            int amountPerTick = Math.min(Math.max((int) Math.floor(serverBuildList.originalSize / 300), min), max);
-            for (int i = 0; i < amountPerTick; i++) {
-                if (serverBuildList.buildType.equals(ServerBuildList.BuildType.BUILD))
-                    build(serverBuildList, player);
-                else if (serverBuildList.buildType.equals(ServerBuildList.BuildType.EXCHANGE))
-                    exchange(serverBuildList, player);
-                else if (serverBuildList.buildType.equals(ServerBuildList.BuildType.DESTROY))
-                    remove(serverBuildList, player);
-                else if (serverBuildList.buildType.equals(ServerBuildList.BuildType.UNDO_DESTROY))
-                    undoDestroy(serverBuildList, player);
-                else if (serverBuildList.buildType.equals(ServerBuildList.BuildType.CUT))
-                    cut(serverBuildList, player);
-            }
+            buildsByPlayer.computeIfAbsent(serverBuildList.playerUUID, k -> new ArrayList<>()).add(serverBuildList);
+        }
+
+        long tickStart = System.nanoTime();
+        long budget = Config.BUILD_TICK_BUDGET.get() * 1000L;
+        int playersRemaining = buildsByPlayer.size();
+        for (Map.Entry<UUID, List<ServerBuildList>> entry : buildsByPlayer.entrySet()) {
+            long now = System.nanoTime();
+            long share = Math.max(budget - (now - tickStart), 0) / playersRemaining--; //Time left unused by earlier players is shared by the remaining ones
+            Player player = event.getServer().getPlayerList().getPlayer(entry.getKey());
+            processBuilds(entry.getValue(), player, now + share);
         }
 
         removeEmptyLists(event);
     }
 
+    /**
+     * Works through a single player's builds round-robin until the deadline passes. Each build always advances at least one
+     * step per tick, and never more than its amountPerTick - anything left over is picked up again next tick.
+     */
+    private static void processBuilds(List<ServerBuildList> serverBuildLists, Player player, long deadline) {
+        boolean worked = true;
+        for (int step = 0; worked; step++) {
+            worked = false;
+            for (ServerBuildList serverBuildList : serverBuildLists) {
+                if (serverBuildList.statePosList.isEmpty() || step >= getAmountPerTick(serverBuildList)) continue;
+                if (step > 0 && System.nanoTime() >= deadline) return;
+                processNext(serverBuildList, player);
+                worked = true;
+            }
+        }
+    }
+
+    public static int getAmountPerTick(ServerBuildList serverBuildList) {
+        int min = serverBuildList.originalSize < 60 ? 1 : 5;
+        int max = 50;
+        return Math.min(Math.max((int) Math.floor(serverBuildList.originalSize / 300), min), max);
+    }
+
+    public static void processNext(ServerBuildList serverBuildList, Player player) {
+        if (serverBuildList.buildType.equals(ServerBuildList.BuildType.BUILD))
+            build(serverBuildList, player);
+        else if (serverBuildList.buildType.equals(ServerBuildList.BuildType.EXCHANGE))
+            exchange(serverBuildList, player);
+        else if (serverBuildList.buildType.equals(ServerBuildList.BuildType.DESTROY))
+            remove(serverBuildList, player);
+        else if (serverBuildList.buildType.equals(ServerBuildList.BuildType.UNDO_DESTROY))
+            undoDestroy(serverBuildList, player);
+        else if (serverBuildList.buildType.equals(ServerBuildList.BuildType.CUT))
+            cut(serverBuildList, player);
+    }
+
     public static void addToMap(UUID buildUUID, StatePos statePos, Level level, byte renderType, Player player, boolean neededItems, boolean returnItems, ItemStack gadget, ServerBuildList.BuildType buildType, boolean dropContents, BlockPos lookingAt) {
         DimBlockPos boundPos = GadgetNBT.getBoundPos(gadget);
         int direction = boundPos == null ? -1 : GadgetNBT.getToolValue(gadget, "binddirection");
-        ServerBuildList serverBuildList = buildMap.computeIfAbsent(buildUUID, k -> new ServerBuildList(level, new ArrayList<>(), renderType, player.getUUID(), neededItems, returnItems, buildUUID, gadget, buildType, dropContents, lookingAt, boundPos, direction));
+        ServerBuildList serverBuildList = buildMap.computeIfAbsent(buildUUID, k -> new ServerBuildList(level, renderType, player.getUUID(), neededItems, returnItems, buildUUID, gadget, buildType, dropContents, lookingAt, boundPos, direction));
         serverBuildList.statePosList.add(statePos);
         serverBuildList.originalSize = serverBuildList.statePosList.size();
     }
@@ -82,12 +121,13 @@ public class ServerTickHandler {
         return buildMap.values().stream().anyMatch(e -> GadgetNBT.getUUID(e.gadget).equals(gadgetUUID));
     }
 
-    public static void setCutStart(UUID buildUUID, BlockPos cutStart) {
+    public static void setCutStart(UUID buildUUID, BlockPos cutStart, AABB area) {
         ServerBuildList serverBuildList = buildMap.get(buildUUID);
         serverBuildList.cutStart = cutStart;
         if (serverBuildList.buildType.equals(ServerBuildList.BuildType.CUT)) { // should always be the case!
-            for (StatePos statePos : serverBuildList.statePosList)
-                serverBuildList.actuallyBuildList.add(new StatePos(Blocks.VOID_AIR.defaultBlockState(), statePos.pos.subtract(serverBuildList.cutStart))); //Fill the actually built list with void air, in case the cut gets interrupted by player logoff
+            serverBuildList.initCutBuffer(area);
+            serverBuildList.statePosList.forEach(statePos ->
+                    serverBuildList.addToCutBuffer(new StatePos(Blocks.VOID_AIR.defaultBlockState(), statePos.pos.subtract(serverBuildList.cutStart)))); //Fill the actually built list with void air, in case the cut gets interrupted by player logoff
         }
     }
 
@@ -118,14 +158,14 @@ public class ServerTickHandler {
     public static void build(ServerBuildList serverBuildList, Player player) {
         Level level = serverBuildList.level;
 
-        ArrayList<StatePos> statePosList = serverBuildList.statePosList;
+        StatePosQueue statePosList = serverBuildList.statePosList;
         if (statePosList.isEmpty()) return;
         BG2Data bg2Data = BG2Data.get(Objects.requireNonNull(level.getServer()).overworld());
-        StatePos statePos = statePosList.remove(0);
+        StatePos statePos = statePosList.poll();
         if (statePos.state.equals(Blocks.VOID_AIR.defaultBlockState()))
             return; //Void_AIR is used for blocks we want to skip
         ArrayList<StatePos> undoList = bg2Data.peekUndoList(GadgetNBT.getUUID(serverBuildList.gadget));
-        if (undoList != null && undoList.contains(statePos))
+        if (serverBuildList.undoListContains(undoList, statePos))
             return; //This really only happens if a cut/paste got interrupted mid-build by a server stop or player logoff
 
         BlockPos blockPos = statePos.pos.offset(serverBuildList.lookingAt);
@@ -141,14 +181,15 @@ public class ServerTickHandler {
             }
         }
 
-        if (!blockState.canSurvive(level, blockPos)) {
-            if (serverBuildList.retryList.contains(blockPos))
+        if (!blockState.canSurvive(level, blockPos) && !(ConstructionOverlay.canUse(blockState) && level.isEmptyBlock(blockPos) && ConstructionOverlay.canSurviveOnceBuilt(level, blockPos, blockState))) { //Blocks still growing in the overlay count, as long as this one goes in the overlay too - it'll wait for them to finish
+            if (serverBuildList.retryList.contains(blockPos.asLong()))
                 return; //Don't retry if this is already retried
             statePosList.add(statePos); //Retry placing this after all other blocks are placed - in case torches are placed before their supporting block for example
-            serverBuildList.retryList.add(blockPos); //Only retry once!
+            serverBuildList.retryList.add(blockPos.asLong()); //Only retry once!
             return;
         }
 
+        if (ConstructionOverlay.get(level, blockPos) != null) return; //Something is already being built or removed here
         if (!level.getBlockState(blockPos).canBeReplaced()) return; //Return without placing the block
 
         List<ItemStack> neededItems = GadgetUtils.getDropsForBlockState((ServerLevel) level, blockPos, blockState, player);
@@ -169,12 +210,16 @@ public class ServerTickHandler {
             }
         }
 
-        boolean placed = level.setBlockAndUpdate(blockPos, Registration.RenderBlock.get().defaultBlockState());
-        RenderBlockBE be = (RenderBlockBE) level.getBlockEntity(blockPos);
+        boolean useOverlay = ConstructionOverlay.canUse(blockState) && level.isEmptyBlock(blockPos);
+        RenderBlockBE be = null;
+        if (!useOverlay) {
+            boolean placed = level.setBlockAndUpdate(blockPos, Registration.RenderBlock.get().defaultBlockState());
+            be = (RenderBlockBE) level.getBlockEntity(blockPos);
 
-        if (!placed || be == null) {
-            // this can happen when another mod rejects the set block state (fixes #120)
-            return;
+            if (!placed || be == null) {
+                // this can happen when another mod rejects the set block state (fixes #120)
+                return;
+            }
         }
         if (blockState.getFluidState().isEmpty()) { //Check for items
             if (!player.isCreative() && serverBuildList.needItems) {
@@ -191,7 +236,13 @@ public class ServerTickHandler {
             }
         }
 
-        be.setRenderData(Blocks.AIR.defaultBlockState(), blockState, serverBuildList.renderType);
+        ConstructionPos placement = null;
+        if (useOverlay) {
+            placement = new ConstructionPos(blockState, blockPos, level.getGameTime(), (byte) 0, false);
+            ConstructionOverlay.add(level, placement);
+        } else {
+            be.setRenderData(Blocks.AIR.defaultBlockState(), blockState, serverBuildList.renderType);
+        }
 
         if (serverBuildList.teData == null && bg2Data.containsUndoList(serverBuildList.buildUUID)) { //Only track 'real undos' for non cut-pasted data
             serverBuildList.addToBuiltList(new StatePos(blockState, blockPos));
@@ -204,7 +255,10 @@ public class ServerTickHandler {
 
             CompoundTag compoundTag = serverBuildList.getTagForPos(blockPos); //First check if theres TE data for this block
             if (!compoundTag.isEmpty()) {
-                be.setBlockEntityData(compoundTag);
+                if (useOverlay)
+                    placement.blockEntityData = compoundTag;
+                else
+                    be.setBlockEntityData(compoundTag);
                 bg2Data.addToTEMap(GadgetNBT.getUUID(serverBuildList.gadget), serverBuildList.teData); //If the server crashes mid-build you'll maybe dupe blocks but at least not dupe TE data? TODO Improve
             }
         }
@@ -213,15 +267,15 @@ public class ServerTickHandler {
     public static void exchange(ServerBuildList serverBuildList, Player player) {
         Level level = serverBuildList.level;
 
-        ArrayList<StatePos> statePosList = serverBuildList.statePosList;
+        StatePosQueue statePosList = serverBuildList.statePosList;
         if (statePosList.isEmpty()) return;
-        StatePos statePos = statePosList.remove(0);
+        StatePos statePos = statePosList.poll();
         if (statePos.state.equals(Blocks.VOID_AIR.defaultBlockState()))
             return; //Void_AIR is used for blocks we wanna skip
 
         BG2Data bg2Data = BG2Data.get(Objects.requireNonNull(level.getServer()).overworld());
         ArrayList<StatePos> undoList = bg2Data.peekUndoList(GadgetNBT.getUUID(serverBuildList.gadget));
-        if (undoList != null && undoList.contains(statePos))
+        if (serverBuildList.undoListContains(undoList, statePos))
             return; //This really only happens if a cut/paste got interrupted mid-build by a server stop or player logoff
 
 
@@ -233,6 +287,7 @@ public class ServerTickHandler {
         byte drawSize = -1;
 
         if (oldState.equals(blockState)) return; //No need to replace blocks if they match!
+        if (ConstructionOverlay.get(level, blockPos) != null) return; //Mid-animation in the construction overlay, leave it be
 
         if (!blockState.getFluidState().isEmpty()) {
             FluidState fluidState = blockState.getFluidState();
@@ -245,10 +300,10 @@ public class ServerTickHandler {
         }
 
         if (!blockState.canSurvive(level, blockPos)) {
-            if (serverBuildList.retryList.contains(blockPos))
+            if (serverBuildList.retryList.contains(blockPos.asLong()))
                 return; //Don't retry if this is already retried
             statePosList.add(statePos);
-            serverBuildList.retryList.add(blockPos); //Only retry once!
+            serverBuildList.retryList.add(blockPos.asLong()); //Only retry once!
             return;
         }
 
@@ -283,7 +338,7 @@ public class ServerTickHandler {
             if (blockEntity instanceof RenderBlockBE renderBlockBE) {
                 oldState = renderBlockBE.targetBlock;
                 oldRenderState = renderBlockBE.renderBlock;
-                drawSize = renderBlockBE.drawSize;
+                drawSize = renderBlockBE.getDrawSize();
                 placed = true;
             }
         } else {
@@ -334,7 +389,7 @@ public class ServerTickHandler {
         else
             be.setRenderData(oldState, blockState, serverBuildList.renderType);
         if (drawSize != -1) //Only if changed from default
-            be.drawSize = drawSize;
+            be.setDrawSize(drawSize);
 
         if (serverBuildList.teData == null && bg2Data.containsUndoList(serverBuildList.buildUUID)) {
             serverBuildList.addToBuiltList(new StatePos(oldState, blockPos));
@@ -355,28 +410,36 @@ public class ServerTickHandler {
     public static void remove(ServerBuildList serverBuildList, Player player) {
         Level level = serverBuildList.level;
 
-        ArrayList<StatePos> statePosList = serverBuildList.statePosList;
+        StatePosQueue statePosList = serverBuildList.statePosList;
         if (statePosList.isEmpty()) return;
-        StatePos statePos = statePosList.remove(0);
+        StatePos statePos = statePosList.poll();
 
         BlockPos blockPos = statePos.pos;
 
         byte drawSize = -99;
 
         BlockState oldState = level.getBlockState(blockPos);
-        if (oldState.isAir() || !GadgetUtils.isValidBlockState(oldState, level, blockPos))
+        ConstructionPos pending = oldState.isAir() ? ConstructionOverlay.get(level, blockPos) : null;
+        if (pending != null && !pending.shrinking) { //Still growing in the construction overlay - shrink it back from its current size
+            ConstructionOverlay.remove(level, blockPos);
+            oldState = pending.state;
+            drawSize = pending.getSize(level.getGameTime());
+        } else if (oldState.isAir() || !GadgetUtils.isValidBlockState(oldState, level, blockPos))
             return; //Return without processing
         if (oldState.getBlock() instanceof RenderBlock) {
             BlockEntity blockEntity = level.getBlockEntity(blockPos);
             if (blockEntity instanceof RenderBlockBE renderBlockBE) {
                 oldState = renderBlockBE.renderBlock;
-                drawSize = renderBlockBE.drawSize;
+                drawSize = renderBlockBE.getDrawSize();
             }
         }
 
-        if (!serverBuildList.dropContents)
-            level.removeBlockEntity(blockPos); //Calling this prevents chests from dropping their contents, so only do it if we don't care about the drops (Like cut)
-        level.setBlock(blockPos, Blocks.AIR.defaultBlockState(), 48);
+        boolean useOverlay = ConstructionOverlay.canUse(oldState);
+        if (pending == null) { //A pending block was never placed, so there is nothing to remove
+            if (!serverBuildList.dropContents)
+                level.removeBlockEntity(blockPos); //Calling this prevents chests from dropping their contents, so only do it if we don't care about the drops (Like cut)
+            level.setBlock(blockPos, Blocks.AIR.defaultBlockState(), useOverlay ? Block.UPDATE_ALL | Block.UPDATE_SUPPRESS_DROPS : 48); //The overlay won't put a block here afterwards, so update right away
+        }
         StatePos affectedBlock = new StatePos(oldState, blockPos);
 
         if (serverBuildList.returnItems) {
@@ -394,12 +457,17 @@ public class ServerTickHandler {
             }
         }
 
-        boolean placed = level.setBlock(affectedBlock.pos, Registration.RenderBlock.get().defaultBlockState(), 3);
-        RenderBlockBE be = (RenderBlockBE) level.getBlockEntity(affectedBlock.pos);
-        if (placed && be != null) {
-            be.setRenderData(affectedBlock.state, Blocks.AIR.defaultBlockState(), serverBuildList.renderType);
-            if (drawSize != -99)
-                be.drawSize = drawSize;
+        if (useOverlay) {
+            byte startSize = drawSize != -99 ? (byte) Math.min(drawSize, ConstructionPos.MAX_SIZE) : ConstructionPos.MAX_SIZE;
+            ConstructionOverlay.add(level, new ConstructionPos(affectedBlock.state, blockPos, level.getGameTime(), startSize, true));
+        } else {
+            boolean placed = level.setBlock(affectedBlock.pos, Registration.RenderBlock.get().defaultBlockState(), 3);
+            RenderBlockBE be = (RenderBlockBE) level.getBlockEntity(affectedBlock.pos);
+            if (placed && be != null) {
+                be.setRenderData(affectedBlock.state, Blocks.AIR.defaultBlockState(), serverBuildList.renderType);
+                if (drawSize != -99)
+                    be.setDrawSize(drawSize);
+            }
         }
 
         serverBuildList.addToBuiltList(affectedBlock);
@@ -411,9 +479,9 @@ public class ServerTickHandler {
     public static void undoDestroy(ServerBuildList serverBuildList, Player player) {
         Level level = serverBuildList.level;
 
-        ArrayList<StatePos> statePosList = serverBuildList.statePosList;
+        StatePosQueue statePosList = serverBuildList.statePosList;
         if (statePosList.isEmpty()) return;
-        StatePos statePos = statePosList.remove(0);
+        StatePos statePos = statePosList.poll();
 
         BlockPos blockPos = statePos.pos;
         BlockState blockState = statePos.state;
@@ -421,16 +489,28 @@ public class ServerTickHandler {
         if (blockState.isAir()) return; //Do nothing if the old state was Air
 
         BlockState oldState = level.getBlockState(blockPos);
+        ConstructionPos pending = ConstructionOverlay.get(level, blockPos);
+        if (pending != null) {
+            if (!pending.shrinking) return; //Something is already being built here
+            ConstructionOverlay.remove(level, blockPos);
+            if (ConstructionOverlay.canUse(blockState)) { //Still being removed - grow it back from its current size
+                long gameTime = level.getGameTime();
+                ConstructionOverlay.add(level, new ConstructionPos(blockState, blockPos, gameTime, pending.getSize(gameTime), false));
+                return;
+            }
+        }
         if (!oldState.canBeReplaced() && !(oldState.getBlock() instanceof RenderBlock))
             return; //Don't overwrite any blocks that have been placed since destroying - only air or replacables like grass/water.
 
         if ((oldState.getBlock() instanceof RenderBlock)) {
             BlockEntity blockEntity = level.getBlockEntity(blockPos);
             if (blockEntity instanceof RenderBlockBE renderBlockBE) {
-                byte drawSize = renderBlockBE.drawSize;
+                byte drawSize = renderBlockBE.getDrawSize();
                 renderBlockBE.setRenderData(Blocks.AIR.defaultBlockState(), blockState, serverBuildList.renderType);
-                renderBlockBE.drawSize = drawSize;
+                renderBlockBE.setDrawSize(drawSize);
             }
+        } else if (oldState.isAir() && ConstructionOverlay.canUse(blockState)) {
+            ConstructionOverlay.add(level, new ConstructionPos(blockState, blockPos, level.getGameTime(), (byte) 0, false));
         } else {
             boolean placed = level.setBlockAndUpdate(blockPos, Registration.RenderBlock.get().defaultBlockState());
             RenderBlockBE be = (RenderBlockBE) level.getBlockEntity(blockPos);
@@ -448,9 +528,9 @@ public class ServerTickHandler {
         if (serverBuildList.teData == null)
             serverBuildList.teData = new ArrayList<>(); //Initialize the list since it isn't done in the ServerBuildList class
 
-        ArrayList<StatePos> statePosList = serverBuildList.statePosList;
+        StatePosQueue statePosList = serverBuildList.statePosList;
         if (statePosList.isEmpty()) return;
-        StatePos statePos = statePosList.remove(0);
+        StatePos statePos = statePosList.poll();
 
         BlockPos blockPos = statePos.pos;
         BlockState blockState = level.getBlockState(blockPos);
@@ -479,6 +559,11 @@ public class ServerTickHandler {
         //Remove blocks from world if appropriate (Not air!)
         if (doRemove) {
             level.removeBlockEntity(blockPos); //Calling this prevents chests from dropping their contents, so only do it if we don't care about the drops (Like cut)
+            if (ConstructionOverlay.canUse(blockState)) {
+                level.setBlock(blockPos, Blocks.AIR.defaultBlockState(), Block.UPDATE_ALL | Block.UPDATE_SUPPRESS_DROPS);
+                ConstructionOverlay.add(level, new ConstructionPos(blockState, blockPos, level.getGameTime(), ConstructionPos.MAX_SIZE, true));
+                return;
+            }
             level.setBlock(blockPos, Blocks.AIR.defaultBlockState(), 48);
             StatePos affectedBlock = new StatePos(blockState, blockPos);
 
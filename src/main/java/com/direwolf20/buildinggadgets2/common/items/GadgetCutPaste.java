@@ -153,7 +153,7 @@ public class GadgetCutPaste extends BaseGadget {
         BlockPos.betweenClosedStream(area).map(BlockPos::immutable).sorted(Comparator.comparingInt(Vec3i::getY).reversed()).forEach(pos -> {
             ServerTickHandler.addToMap(buildUUID, new StatePos(Blocks.AIR.defaultBlockState(), pos), level, GadgetNBT.getRenderTypeByte(gadget), player, false, false, gadget, ServerBuildList.BuildType.CUT, false, BlockPos.ZERO);
         });
-        ServerTickHandler.setCutStart(buildUUID, cutStart);
+        ServerTickHandler.setCutStart(buildUUID, cutStart, area);
         GadgetNBT.setCopyStartPos(gadget, GadgetNBT.nullPos);
         GadgetNBT.setCopyEndPos(gadget, GadgetNBT.nullPos);
         player.displayClientMessage(Component.translatable("buildinggadgets2.messages.cutblocks", size), true);
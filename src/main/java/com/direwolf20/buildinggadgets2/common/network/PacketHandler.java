@@ -8,13 +8,15 @@ import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
 import net.minecraftforge.common.util.FakePlayer;
 import net.minecraftforge.network.NetworkDirection;
 import net.minecraftforge.network.NetworkRegistry;
+import net.minecraftforge.network.PacketDistributor;
 import net.minecraftforge.network.simple.SimpleChannel;
 
 public class PacketHandler {
-    private static final String PROTOCOL_VERSION = Integer.toString(2);
+    private static final String PROTOCOL_VERSION = Integer.toString(7);
     private static short index = 0;
 
     public static final SimpleChannel HANDLER = NetworkRegistry.ChannelBuilder
@@ -40,12 +42,17 @@ public class PacketHandler {
         HANDLER.registerMessage(id++, PacketRelativePaste.class, PacketRelativePaste::encode, PacketRelativePaste::decode, PacketRelativePaste::handle);
         HANDLER.registerMessage(id++, PacketDestructionRanges.class, PacketDestructionRanges::encode, PacketDestructionRanges::decode, PacketDestructionRanges::handle);
         HANDLER.registerMessage(id++, PacketUpdateTemplateManager.class, PacketUpdateTemplateManager::encode, PacketUpdateTemplateManager::decode, PacketUpdateTemplateManager::handle);
-        HANDLER.registerMessage(id++, PacketSendCopyDataToServer.class, PacketSendCopyDataToServer::encode, PacketSendCopyDataToServer::decode, PacketSendCopyDataToServer::handle);
         HANDLER.registerMessage(id++, PacketSendPasteBatches.class, PacketSendPasteBatches::encode, PacketSendPasteBatches::decode, PacketSendPasteBatches::handle);
         HANDLER.registerMessage(id++, PacketRotate.class, PacketRotate::encode, PacketRotate::decode, PacketRotate::handle);
+        HANDLER.registerMessage(id++, PacketCopyDataAck.class, PacketCopyDataAck::encode, PacketCopyDataAck::decode, PacketCopyDataAck::handle);
 
         //Client Side
         HANDLER.registerMessage(id++, PacketSendCopyData.class, PacketSendCopyData::encode, PacketSendCopyData::decode, PacketSendCopyData.Handler::handle);
+        HANDLER.registerMessage(id++, PacketCopyDataCached.class, PacketCopyDataCached::encode, PacketCopyDataCached::decode, PacketCopyDataCached.Handler::handle);
+        HANDLER.registerMessage(id++, PacketCopyDataRotated.class, PacketCopyDataRotated::encode, PacketCopyDataRotated::decode, PacketCopyDataRotated.Handler::handle);
+        HANDLER.registerMessage(id++, PacketCopyDataHash.class, PacketCopyDataHash::encode, PacketCopyDataHash::decode, PacketCopyDataHash.Handler::handle);
+        HANDLER.registerMessage(id++, PacketConstructionOverlay.class, PacketConstructionOverlay::encode, PacketConstructionOverlay::decode, PacketConstructionOverlay.Handler::handle);
+        HANDLER.registerMessage(id++, PacketRenderBlockSync.class, PacketRenderBlockSync::encode, PacketRenderBlockSync::decode, PacketRenderBlockSync.Handler::handle);
 
     }
 
@@ -61,6 +68,10 @@ public class PacketHandler {
         }
     }
 
+    public static void sendToTrackingChunk(Object msg, LevelChunk chunk) {
+        HANDLER.send(PacketDistributor.TRACKING_CHUNK.with(() -> chunk), msg);
+    }
+
     /**
      * Sends a vanilla packet to the given player
      *
@@ -0,0 +1,48 @@
+package com.direwolf20.buildinggadgets2.common.network.packets;
+
+import com.direwolf20.buildinggadgets2.client.renderer.ConstructionOverlayRenderer;
+import com.direwolf20.buildinggadgets2.util.datatypes.ConstructionPos;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.network.NetworkEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Everything the construction overlay started in one chunk during a tick, sent once to the players tracking that chunk
+ */
+public class PacketConstructionOverlay {
+    private final List<ConstructionPos> placements;
+
+    public PacketConstructionOverlay(List<ConstructionPos> placements) {
+        this.placements = placements;
+    }
+
+    public static void encode(PacketConstructionOverlay msg, FriendlyByteBuf buffer) {
+        buffer.writeVarInt(msg.placements.size());
+        for (ConstructionPos placement : msg.placements)
+            placement.encode(buffer);
+    }
+
+    public static PacketConstructionOverlay decode(FriendlyByteBuf buffer) {
+        int size = buffer.readVarInt();
+        List<ConstructionPos> placements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            placements.add(ConstructionPos.decode(buffer));
+        return new PacketConstructionOverlay(placements);
+    }
+
+    public static class Handler {
+        public static void handle(PacketConstructionOverlay msg, Supplier<NetworkEvent.Context> ctx) {
+            ctx.get().enqueueWork(() -> DistExecutor.runWhenOn(Dist.CLIENT, () -> () -> clientPacketHandler(msg)));
+            ctx.get().setPacketHandled(true);
+        }
+    }
+
+    public static void clientPacketHandler(PacketConstructionOverlay msg) {
+        ConstructionOverlayRenderer.add(msg.placements);
+    }
+}
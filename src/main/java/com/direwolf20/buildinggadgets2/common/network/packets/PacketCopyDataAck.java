@@ -0,0 +1,47 @@
+package com.direwolf20.buildinggadgets2.common.network.packets;
+
+import com.direwolf20.buildinggadgets2.common.events.CopyDataStreamer;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.network.NetworkEvent;
+
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Client confirming it received a PacketSendCopyData chunk, see CopyDataStreamer
+ */
+public class PacketCopyDataAck {
+    private UUID gadgetUUID;
+    private UUID copyUUID;
+    private int position;
+
+    public PacketCopyDataAck(UUID gadgetUUID, UUID copyUUID, int position) {
+        this.gadgetUUID = gadgetUUID;
+        this.copyUUID = copyUUID;
+        this.position = position;
+    }
+
+    public static PacketCopyDataAck decode(FriendlyByteBuf buf) {
+        return new PacketCopyDataAck(buf.readUUID(), buf.readUUID(), buf.readInt());
+    }
+
+    public static void encode(PacketCopyDataAck message, FriendlyByteBuf buf) {
+        buf.writeUUID(message.gadgetUUID);
+        buf.writeUUID(message.copyUUID);
+        buf.writeInt(message.position);
+    }
+
+    public static void handle(PacketCopyDataAck message, Supplier<NetworkEvent.Context> context) {
+        context.get().enqueueWork(() -> {
+            ServerPlayer sender = context.get().getSender();
+            if (sender == null) {
+                return;
+            }
+
+            CopyDataStreamer.acknowledge(sender, message.gadgetUUID, message.copyUUID, message.position);
+        });
+
+        context.get().setPacketHandled(true);
+    }
+}
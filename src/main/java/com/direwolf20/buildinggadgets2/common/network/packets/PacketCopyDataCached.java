@@ -0,0 +1,43 @@
+package com.direwolf20.buildinggadgets2.common.network.packets;
+
+import com.direwolf20.buildinggadgets2.common.worlddata.BG2DataClient;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.network.NetworkEvent;
+
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Sent instead of PacketSendCopyData when the client's cached copy of the data is still current
+ */
+public class PacketCopyDataCached {
+    private UUID gadgetUUID;
+    private UUID copyUUID;
+
+    public PacketCopyDataCached(UUID gadgetUUID, UUID copyUUID) {
+        this.gadgetUUID = gadgetUUID;
+        this.copyUUID = copyUUID;
+    }
+
+    public static void encode(PacketCopyDataCached msg, FriendlyByteBuf buffer) {
+        buffer.writeUUID(msg.gadgetUUID);
+        buffer.writeUUID(msg.copyUUID);
+    }
+
+    public static PacketCopyDataCached decode(FriendlyByteBuf buffer) {
+        return new PacketCopyDataCached(buffer.readUUID(), buffer.readUUID());
+    }
+
+    public static class Handler {
+        public static void handle(PacketCopyDataCached msg, Supplier<NetworkEvent.Context> ctx) {
+            ctx.get().enqueueWork(() -> DistExecutor.runWhenOn(Dist.CLIENT, () -> () -> clientPacketHandler(msg)));
+            ctx.get().setPacketHandled(true);
+        }
+    }
+
+    public static void clientPacketHandler(PacketCopyDataCached msg) {
+        BG2DataClient.useCachedCopyData(msg.gadgetUUID, msg.copyUUID);
+    }
+}
@@ -0,0 +1,46 @@
+package com.direwolf20.buildinggadgets2.common.network.packets;
+
+import com.direwolf20.buildinggadgets2.common.worlddata.BG2DataClient;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.network.NetworkEvent;
+
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Follows a PacketCopyDataRotated once the server has hashed the rotated data, so the client can cache its rotated copy under that hash
+ */
+public class PacketCopyDataHash {
+    private UUID gadgetUUID;
+    private UUID copyUUID;
+    private long hash; //PasteData.hash of the rotated data, as the server would send it
+
+    public PacketCopyDataHash(UUID gadgetUUID, UUID copyUUID, long hash) {
+        this.gadgetUUID = gadgetUUID;
+        this.copyUUID = copyUUID;
+        this.hash = hash;
+    }
+
+    public static void encode(PacketCopyDataHash msg, FriendlyByteBuf buffer) {
+        buffer.writeUUID(msg.gadgetUUID);
+        buffer.writeUUID(msg.copyUUID);
+        buffer.writeLong(msg.hash);
+    }
+
+    public static PacketCopyDataHash decode(FriendlyByteBuf buffer) {
+        return new PacketCopyDataHash(buffer.readUUID(), buffer.readUUID(), buffer.readLong());
+    }
+
+    public static class Handler {
+        public static void handle(PacketCopyDataHash msg, Supplier<NetworkEvent.Context> ctx) {
+            ctx.get().enqueueWork(() -> DistExecutor.runWhenOn(Dist.CLIENT, () -> () -> clientPacketHandler(msg)));
+            ctx.get().setPacketHandled(true);
+        }
+    }
+
+    public static void clientPacketHandler(PacketCopyDataHash msg) {
+        BG2DataClient.setRotatedHash(msg.gadgetUUID, msg.copyUUID, msg.hash);
+    }
+}
@@ -0,0 +1,47 @@
+package com.direwolf20.buildinggadgets2.common.network.packets;
+
+import com.direwolf20.buildinggadgets2.common.worlddata.BG2DataClient;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.network.NetworkEvent;
+
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Tells the client a gadget's copy data was rotated, so it can rotate the copy it already has instead of downloading the new one.
+ * Sent straight away, ahead of the gadget's new copyUUID - the hash of the rotated data follows in a PacketCopyDataHash.
+ */
+public class PacketCopyDataRotated {
+    private UUID gadgetUUID;
+    private UUID oldCopyUUID;
+    private UUID newCopyUUID;
+
+    public PacketCopyDataRotated(UUID gadgetUUID, UUID oldCopyUUID, UUID newCopyUUID) {
+        this.gadgetUUID = gadgetUUID;
+        this.oldCopyUUID = oldCopyUUID;
+        this.newCopyUUID = newCopyUUID;
+    }
+
+    public static void encode(PacketCopyDataRotated msg, FriendlyByteBuf buffer) {
+        buffer.writeUUID(msg.gadgetUUID);
+        buffer.writeUUID(msg.oldCopyUUID);
+        buffer.writeUUID(msg.newCopyUUID);
+    }
+
+    public static PacketCopyDataRotated decode(FriendlyByteBuf buffer) {
+        return new PacketCopyDataRotated(buffer.readUUID(), buffer.readUUID(), buffer.readUUID());
+    }
+
+    public static class Handler {
+        public static void handle(PacketCopyDataRotated msg, Supplier<NetworkEvent.Context> ctx) {
+            ctx.get().enqueueWork(() -> DistExecutor.runWhenOn(Dist.CLIENT, () -> () -> clientPacketHandler(msg)));
+            ctx.get().setPacketHandled(true);
+        }
+    }
+
+    public static void clientPacketHandler(PacketCopyDataRotated msg) {
+        BG2DataClient.rotateCopyData(msg.gadgetUUID, msg.oldCopyUUID, msg.newCopyUUID);
+    }
+}
@@ -0,0 +1,87 @@
+package com.direwolf20.buildinggadgets2.common.network.packets;
+
+import com.direwolf20.buildinggadgets2.common.blockentities.RenderBlockBE;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.network.NetworkEvent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The render data of every RenderBlockBE in a chunk that changed this tick, as registry state ids - replaces a full NBT block entity update per block
+ */
+public class PacketRenderBlockSync {
+    private static final int SHRINKING = 1;
+    private static final int EXCHANGING = 2;
+    private final List<SyncData> blocks;
+
+    private record SyncData(BlockPos pos, BlockState renderBlock, BlockState sourceBlock, BlockState targetBlock, byte renderType, byte drawSize, byte flags) {
+    }
+
+    private PacketRenderBlockSync(List<SyncData> blocks) {
+        this.blocks = blocks;
+    }
+
+    public PacketRenderBlockSync(Collection<RenderBlockBE> blockEntities) {
+        this.blocks = new ArrayList<>(blockEntities.size());
+        for (RenderBlockBE be : blockEntities) {
+            byte flags = (byte) ((be.shrinking ? SHRINKING : 0) | (be.exchanging ? EXCHANGING : 0));
+            blocks.add(new SyncData(be.getBlockPos(), be.renderBlock, be.sourceBlock, be.targetBlock, be.renderType, be.getDrawSize(), flags));
+        }
+    }
+
+    public static void encode(PacketRenderBlockSync msg, FriendlyByteBuf buffer) {
+        buffer.writeVarInt(msg.blocks.size());
+        for (SyncData data : msg.blocks) {
+            buffer.writeLong(data.pos.asLong());
+            writeState(buffer, data.renderBlock);
+            writeState(buffer, data.sourceBlock);
+            writeState(buffer, data.targetBlock);
+            buffer.writeByte(data.renderType);
+            buffer.writeByte(data.drawSize);
+            buffer.writeByte(data.flags);
+        }
+    }
+
+    public static PacketRenderBlockSync decode(FriendlyByteBuf buffer) {
+        int size = buffer.readVarInt();
+        List<SyncData> blocks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            blocks.add(new SyncData(BlockPos.of(buffer.readLong()), readState(buffer), readState(buffer), readState(buffer), buffer.readByte(), buffer.readByte(), buffer.readByte()));
+        return new PacketRenderBlockSync(blocks);
+    }
+
+    private static void writeState(FriendlyByteBuf buffer, BlockState state) {
+        buffer.writeVarInt(state == null ? Block.getId(Blocks.AIR.defaultBlockState()) : Block.getId(state));
+    }
+
+    private static BlockState readState(FriendlyByteBuf buffer) {
+        return Block.stateById(buffer.readVarInt());
+    }
+
+    public static class Handler {
+        public static void handle(PacketRenderBlockSync msg, Supplier<NetworkEvent.Context> ctx) {
+            ctx.get().enqueueWork(() -> DistExecutor.runWhenOn(Dist.CLIENT, () -> () -> clientPacketHandler(msg)));
+            ctx.get().setPacketHandled(true);
+        }
+    }
+
+    public static void clientPacketHandler(PacketRenderBlockSync msg) {
+        ClientLevel level = Minecraft.getInstance().level;
+        if (level == null) return;
+        for (SyncData data : msg.blocks) {
+            if (level.getBlockEntity(data.pos) instanceof RenderBlockBE be)
+                be.setSyncData(data.renderBlock, data.sourceBlock, data.targetBlock, data.renderType, data.drawSize, (data.flags & SHRINKING) != 0, (data.flags & EXCHANGING) != 0);
+        }
+    }
+}
@@ -3,11 +3,14 @@ package com.direwolf20.buildinggadgets2.common.network.packets;
 import com.direwolf20.buildinggadgets2.common.events.ServerTickHandler;
 import com.direwolf20.buildinggadgets2.common.network.PacketHandler;
 import com.direwolf20.buildinggadgets2.common.worlddata.BG2Data;
-import net.minecraft.nbt.CompoundTag;
+import com.direwolf20.buildinggadgets2.util.WorkerPool;
+import com.direwolf20.buildinggadgets2.util.datatypes.PasteData;
+import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraftforge.network.NetworkEvent;
 
+import java.util.ArrayList;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.function.Supplier;
@@ -15,19 +18,22 @@ import java.util.function.Supplier;
 public class PacketRequestCopyData {
     private UUID gadgetUUID;
     private UUID copyUUID;
+    private long cachedHash; //Hash of the copy data the client already has cached for copyUUID, 0 if none
 
-    public PacketRequestCopyData(UUID gadgetUUID, UUID copyUUID) {
+    public PacketRequestCopyData(UUID gadgetUUID, UUID copyUUID, long cachedHash) {
         this.gadgetUUID = gadgetUUID;
         this.copyUUID = copyUUID;
+        this.cachedHash = cachedHash;
     }
 
     public static PacketRequestCopyData decode(FriendlyByteBuf buf) {
-        return new PacketRequestCopyData(buf.readUUID(), buf.readUUID());
+        return new PacketRequestCopyData(buf.readUUID(), buf.readUUID(), buf.readLong());
     }
 
     public static void encode(PacketRequestCopyData message, FriendlyByteBuf buf) {
         buf.writeUUID(message.gadgetUUID);
         buf.writeUUID(message.copyUUID);
+        buf.writeLong(message.cachedHash);
     }
 
     public static void handle(PacketRequestCopyData message, Supplier<NetworkEvent.Context> context) {
@@ -50,7 +56,29 @@ public class PacketRequestCopyData {
             }
 
             BG2Data bg2Data = BG2Data.get(Objects.requireNonNull(sender.level().getServer()).overworld());
-            CompoundTag tag = bg2Data.getCopyPasteListAsNBTMap(message.gadgetUUID, false);
+            Long hash = bg2Data.getCopyPasteHash(message.gadgetUUID);
+            if (hash != null && hash == message.cachedHash) { //Client already has exactly this, no need to resend it
+                PacketHandler.sendTo(new PacketCopyDataCached(message.gadgetUUID, message.copyUUID), sender);
+                return;
+            }
+            //Encoding and compressing doesn't need the world, so do it on a worker - on a copy of the list, in case it's changed meanwhile
+            ArrayList<StatePos> copyPasteList = bg2Data.getCopyPasteList(message.gadgetUUID, false);
+            ArrayList<StatePos> snapshot = copyPasteList == null ? null : new ArrayList<>(copyPasteList);
+            WorkerPool.submit(sender.server, () -> PasteData.compress(BG2Data.statePosListToNBTMapArray(snapshot)), payload -> {
+                if (sender.hasDisconnected()) {
+                    payload.release();
+                    return;
+                }
+                long payloadHash = PasteData.hash(payload);
+                if (bg2Data.getCopyPasteList(message.gadgetUUID, false) == copyPasteList) //Only remember the hash if the data hasn't been replaced while we were encoding
+                    bg2Data.setCopyPasteHash(message.gadgetUUID, payloadHash);
+                if (payloadHash == message.cachedHash) {
+                    payload.release();
+                    PacketHandler.sendTo(new PacketCopyDataCached(message.gadgetUUID, message.copyUUID), sender);
+                    return;
+                }
+                PasteData.sendCopyData(sender, message.gadgetUUID, message.copyUUID, payload);
+            });
             //Will bring this back if needed, but the block limit in place should make this obsolete
             /*FriendlyByteBuf buffer = new FriendlyByteBuf(Unpooled.buffer());
             PacketSendCopyData packet = new PacketSendCopyData(GadgetNBT.getUUID(gadget), GadgetNBT.getCopyUUID(gadget), tag);
@@ -62,7 +90,6 @@ public class PacketRequestCopyData {
                 sender.displayClientMessage(Component.literal("NBT Tag Size is: " + tag.sizeInBytes() + ". Packet size is: " + packetSize), false);
                 PacketHandler.sendTo(new PacketSendCopyData(GadgetNBT.getUUID(gadget), GadgetNBT.getCopyUUID(gadget), tag), sender);
             }*/
-            PacketHandler.sendTo(new PacketSendCopyData(message.gadgetUUID, message.copyUUID, tag), sender);
         });
 
         context.get().setPacketHandled(true);
@@ -3,10 +3,14 @@ package com.direwolf20.buildinggadgets2.common.network.packets;
 import com.direwolf20.buildinggadgets2.common.events.ServerTickHandler;
 import com.direwolf20.buildinggadgets2.common.items.BaseGadget;
 import com.direwolf20.buildinggadgets2.common.items.GadgetCutPaste;
+import com.direwolf20.buildinggadgets2.common.network.PacketHandler;
 import com.direwolf20.buildinggadgets2.common.worlddata.BG2Data;
 import com.direwolf20.buildinggadgets2.util.GadgetNBT;
+import com.direwolf20.buildinggadgets2.util.WorkerPool;
+import com.direwolf20.buildinggadgets2.util.datatypes.PasteData;
 import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
 import com.direwolf20.buildinggadgets2.util.datatypes.TagPos;
+import io.netty.buffer.ByteBuf;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerPlayer;
@@ -60,13 +64,31 @@ public class PacketRotate {
             ArrayList<StatePos> newPosList = StatePos.rotate90Degrees(currentPosList, tagListMutable);
 
             bg2Data.addToCopyPaste(gadgetUUID, newPosList);
-            GadgetNBT.setCopyUUID(gadget);
+            UUID oldCopyUUID = GadgetNBT.getCopyUUID(gadget);
+            UUID newCopyUUID = GadgetNBT.setCopyUUID(gadget);
 
             //Handle TE Data - do nothing if null or empty
-            if (tagListMutable == null || tagListMutable.isEmpty()) return;
-            bg2Data.addToTEMap(gadgetUUID, tagListMutable);
-
-
+            if (tagListMutable != null && !tagListMutable.isEmpty())
+                bg2Data.addToTEMap(gadgetUUID, tagListMutable);
+
+            //Let the client rotate the copy it already has, rather than re-requesting all of it. Sent now, so it arrives before the gadget's new copyUUID does
+            PacketHandler.sendTo(new PacketCopyDataRotated(gadgetUUID, oldCopyUUID, newCopyUUID), sender);
+
+            //The hash lets the client answer later requests from its cache. Encoding and hashing doesn't need the world, so do it on a worker - on a copy of the list, in case it's changed meanwhile
+            ArrayList<StatePos> snapshot = new ArrayList<>(newPosList);
+            WorkerPool.submit(sender.server, () -> {
+                ByteBuf payload = PasteData.compress(BG2Data.statePosListToNBTMapArray(snapshot));
+                try {
+                    return PasteData.hash(payload);
+                } finally {
+                    payload.release();
+                }
+            }, hash -> {
+                if (bg2Data.getCopyPasteList(gadgetUUID, false) == newPosList) //Only remember it if the data hasn't been rotated (or replaced) again while we were encoding
+                    bg2Data.setCopyPasteHash(gadgetUUID, hash);
+                if (!sender.hasDisconnected()) //Still right for newCopyUUID either way
+                    PacketHandler.sendTo(new PacketCopyDataHash(gadgetUUID, newCopyUUID, hash), sender);
+            });
         });
 
         context.get().setPacketHandled(true);
@@ -1,37 +1,43 @@
 package com.direwolf20.buildinggadgets2.common.network.packets;
 
-import com.direwolf20.buildinggadgets2.common.worlddata.BG2Data;
 import com.direwolf20.buildinggadgets2.common.worlddata.BG2DataClient;
-import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
-import net.minecraft.nbt.CompoundTag;
+import io.netty.buffer.ByteBuf;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.fml.DistExecutor;
 import net.minecraftforge.network.NetworkEvent;
 
-import java.util.ArrayList;
 import java.util.UUID;
 import java.util.function.Supplier;
 
+/**
+ * One chunk of a compressed copy/paste tag - see PasteData.sendCopyData
+ */
 public class PacketSendCopyData {
     private UUID gadgetUUID;
     private UUID copyUUID;
-    private CompoundTag tag;
+    private int numberOfPackets;
+    private int position;
+    private ByteBuf data;
 
-    public PacketSendCopyData(UUID gadgetUUID, UUID copyUUID, CompoundTag tag) {
+    public PacketSendCopyData(UUID gadgetUUID, UUID copyUUID, int numberOfPackets, int position, ByteBuf data) {
         this.gadgetUUID = gadgetUUID;
         this.copyUUID = copyUUID;
-        this.tag = tag;
+        this.numberOfPackets = numberOfPackets;
+        this.position = position;
+        this.data = data;
     }
 
     public static void encode(PacketSendCopyData msg, FriendlyByteBuf buffer) {
         buffer.writeUUID(msg.gadgetUUID);
         buffer.writeUUID(msg.copyUUID);
-        buffer.writeNbt(msg.tag);
+        buffer.writeInt(msg.numberOfPackets);
+        buffer.writeInt(msg.position);
+        buffer.writeBytes(msg.data, msg.data.readerIndex(), msg.data.readableBytes()); //Leave the slice itself untouched
     }
 
     public static PacketSendCopyData decode(FriendlyByteBuf buffer) {
-        return new PacketSendCopyData(buffer.readUUID(), buffer.readUUID(), buffer.readNbt());
+        return new PacketSendCopyData(buffer.readUUID(), buffer.readUUID(), buffer.readInt(), buffer.readInt(), buffer.readRetainedSlice(buffer.readableBytes()));
     }
 
     public static class Handler {
@@ -42,9 +48,6 @@ public class PacketSendCopyData {
     }
 
     public static void clientPacketHandler(PacketSendCopyData msg) {
-        UUID gadgetUUID = msg.gadgetUUID;
-        UUID copyUUID = msg.copyUUID;
-        ArrayList<StatePos> statePosList = BG2Data.statePosListFromNBTMapArray(msg.tag);
-        BG2DataClient.updateLookupFromNBT(gadgetUUID, copyUUID, statePosList);
+        BG2DataClient.addCopyDataChunk(msg.gadgetUUID, msg.copyUUID, msg.position, msg.numberOfPackets, msg.data);
     }
 }
@@ -1,12 +1,14 @@
 package com.direwolf20.buildinggadgets2.common.network.packets;
 
 import com.direwolf20.buildinggadgets2.common.containers.TemplateManagerContainer;
-import com.direwolf20.buildinggadgets2.common.network.PacketHandler;
+import com.direwolf20.buildinggadgets2.common.events.PasteUploads;
 import com.direwolf20.buildinggadgets2.common.worlddata.BG2Data;
 import com.direwolf20.buildinggadgets2.setup.Registration;
 import com.direwolf20.buildinggadgets2.util.GadgetNBT;
+import com.direwolf20.buildinggadgets2.util.WorkerPool;
+import com.direwolf20.buildinggadgets2.util.datatypes.PasteData;
 import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
-import net.minecraft.nbt.CompoundTag;
+import io.netty.buffer.ByteBuf;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.inventory.AbstractContainerMenu;
@@ -20,12 +22,12 @@ import java.util.UUID;
 import java.util.function.Supplier;
 
 public class PacketSendPasteBatches {
-    private FriendlyByteBuf data;
+    private ByteBuf data;
     private UUID copyUUID;
     private int position;
     private int numberOfPackets;
 
-    public PacketSendPasteBatches(UUID copyUUID, int numberOfPackets, int position, FriendlyByteBuf data) {
+    public PacketSendPasteBatches(UUID copyUUID, int numberOfPackets, int position, ByteBuf data) {
         this.data = data;
         this.copyUUID = copyUUID;
         this.numberOfPackets = numberOfPackets;
@@ -36,7 +38,7 @@ public class PacketSendPasteBatches {
         UUID copyUUID = buf.readUUID(); // Decode UUID
         int numberOfPackets = buf.readInt(); // Decode int
         int position = buf.readInt(); // Decode position
-        FriendlyByteBuf data = new FriendlyByteBuf(buf.readBytes(buf.readableBytes())); // Read the remaining bytes
+        ByteBuf data = buf.readRetainedSlice(buf.readableBytes()); // Slice off the remaining bytes - released by PasteData once assembled
         return new PacketSendPasteBatches(copyUUID, numberOfPackets, position, data);
     }
 
@@ -44,46 +46,67 @@ public class PacketSendPasteBatches {
         buf.writeUUID(message.copyUUID); // Write UUID to buffer
         buf.writeInt(message.numberOfPackets); // Write int to buffer
         buf.writeInt(message.position); // Write position to buffer
-        buf.writeBytes(message.data);  // Write data to buffer
+        buf.writeBytes(message.data, message.data.readerIndex(), message.data.readableBytes());  // Write data to buffer, leaving the slice itself untouched
     }
 
     public static void handle(PacketSendPasteBatches message, Supplier<NetworkEvent.Context> context) {
         context.get().enqueueWork(() -> {
             ServerPlayer sender = context.get().getSender();
             if (sender == null) {
+                message.data.release();
                 return;
             }
 
-            AbstractContainerMenu container = sender.containerMenu;
-            if (container == null || !(container instanceof TemplateManagerContainer))
+            if (getTemplateStack(sender).isEmpty()) {
+                message.data.release();
                 return;
-
-            ItemStack templateStack = container.getSlot(1).getItem();
-
-            if (templateStack.isEmpty())
-                return;
-
-            if (templateStack.is(Items.PAPER)) {
-                container.setItem(1, container.getStateId(), new ItemStack(Registration.Template.get()));
-                templateStack = container.getSlot(1).getItem();
             }
 
-            BG2Data bg2Data = BG2Data.get(Objects.requireNonNull(sender.level().getServer()).overworld());
-            boolean complete = bg2Data.addToPasteChunks(message.copyUUID, message.position, message.numberOfPackets, message.data);
-            if (!complete)
-                return;
-
-            CompoundTag assembledTag = bg2Data.getAssembledTag(message.copyUUID);
-            ArrayList<StatePos> buildList = BG2Data.statePosListFromNBTMapArray(assembledTag);
-            bg2Data.addToCopyPaste(GadgetNBT.getUUID(templateStack), buildList);
-            GadgetNBT.setCopyUUID(templateStack, message.copyUUID);
-
-            //Update the client - Yes - even though this came from the client!! This is to make sure the server sanity checked the blocks list
-            CompoundTag tag = bg2Data.getCopyPasteListAsNBTMap(GadgetNBT.getUUID(templateStack), false);
-            PacketHandler.sendTo(new PacketSendCopyData(GadgetNBT.getUUID(templateStack), GadgetNBT.getCopyUUID(templateStack), tag), sender);
+            PasteData pasteData = PasteUploads.addChunk(sender, message.copyUUID, message.position, message.numberOfPackets, message.data);
+            if (pasteData == null)
+                return; //Not complete yet - or rejected
 
+            //Decoding, and encoding the sanity checked list we send back, don't need the world - so do both on a worker
+            BG2Data bg2Data = BG2Data.get(Objects.requireNonNull(sender.level().getServer()).overworld());
+            WorkerPool.submit(sender.server, () -> {
+                ArrayList<StatePos> buildList = BG2Data.statePosListFromNBTMapArray(PasteUploads.decode(pasteData));
+                return new DecodedPaste(buildList, PasteData.compress(BG2Data.statePosListToNBTMapArray(buildList)));
+            }, decoded -> {
+                ItemStack templateStack = getTemplateStack(sender); //Check again, the player may have closed the template manager meanwhile
+                if (sender.hasDisconnected() || templateStack.isEmpty()) {
+                    decoded.payload.release();
+                    return;
+                }
+                UUID templateUUID = GadgetNBT.getUUID(templateStack);
+                bg2Data.addToCopyPaste(templateUUID, decoded.buildList);
+                bg2Data.setCopyPasteHash(templateUUID, PasteData.hash(decoded.payload));
+                GadgetNBT.setCopyUUID(templateStack, message.copyUUID);
+
+                //Update the client - Yes - even though this came from the client!! This is to make sure the server sanity checked the blocks list
+                PasteData.sendCopyData(sender, templateUUID, GadgetNBT.getCopyUUID(templateStack), decoded.payload);
+            });
         });
 
         context.get().setPacketHandled(true);
     }
+
+    private record DecodedPaste(ArrayList<StatePos> buildList, ByteBuf payload) {
+    }
+
+    /**
+     * The template in the sender's open template manager, turning paper into a template if needed - or empty if there isn't one
+     */
+    private static ItemStack getTemplateStack(ServerPlayer sender) {
+        AbstractContainerMenu container = sender.containerMenu;
+        if (container == null || !(container instanceof TemplateManagerContainer))
+            return ItemStack.EMPTY;
+
+        ItemStack templateStack = container.getSlot(1).getItem();
+
+        if (templateStack.is(Items.PAPER)) {
+            container.setItem(1, container.getStateId(), new ItemStack(Registration.Template.get()));
+            templateStack = container.getSlot(1).getItem();
+        }
+        return templateStack;
+    }
 }
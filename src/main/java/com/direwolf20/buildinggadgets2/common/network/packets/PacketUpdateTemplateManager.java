@@ -1,10 +1,10 @@
 package com.direwolf20.buildinggadgets2.common.network.packets;
 
 import com.direwolf20.buildinggadgets2.common.containers.TemplateManagerContainer;
-import com.direwolf20.buildinggadgets2.common.network.PacketHandler;
 import com.direwolf20.buildinggadgets2.common.worlddata.BG2Data;
 import com.direwolf20.buildinggadgets2.setup.Registration;
 import com.direwolf20.buildinggadgets2.util.GadgetNBT;
+import com.direwolf20.buildinggadgets2.util.datatypes.PasteData;
 import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
@@ -51,9 +51,9 @@ public class PacketUpdateTemplateManager {
 
         //Ensure client has the updated values for both objects
         CompoundTag tag = bg2Data.getCopyPasteListAsNBTMap(sourceUUID, false);
-        PacketHandler.sendTo(new PacketSendCopyData(sourceUUID, GadgetNBT.getCopyUUID(sourceStack), tag), sender);
+        PasteData.sendCopyData(sender, sourceUUID, GadgetNBT.getCopyUUID(sourceStack), tag);
         tag = bg2Data.getCopyPasteListAsNBTMap(targetUUID, false);
-        PacketHandler.sendTo(new PacketSendCopyData(targetUUID, GadgetNBT.getCopyUUID(targetStack), tag), sender);
+        PasteData.sendCopyData(sender, targetUUID, GadgetNBT.getCopyUUID(targetStack), tag);
     }
 
     public static void handle(PacketUpdateTemplateManager message, Supplier<NetworkEvent.Context> context) {
@@ -1,32 +1,45 @@
 package com.direwolf20.buildinggadgets2.common.worlddata;
 
-import com.direwolf20.buildinggadgets2.util.datatypes.PasteData;
+import com.direwolf20.buildinggadgets2.util.datatypes.BlockBuffer;
 import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
 import com.direwolf20.buildinggadgets2.util.datatypes.TagPos;
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
 import net.minecraft.nbt.NbtUtils;
 import net.minecraft.nbt.Tag;
-import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.Mth;
+import net.minecraft.util.SimpleBitStorage;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.saveddata.SavedData;
-import net.minecraft.world.phys.AABB;
+import net.minecraft.world.level.storage.LevelResource;
+import org.slf4j.Logger;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
-import java.util.stream.Collectors;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
 
 public class BG2Data extends SavedData {
+    private static final Logger LOGGER = LogUtils.getLogger();
     private static final String NAME = "buildinggadgets2";
+    private static final int VERSION = 2; //Version 2+ stores each UUID's data in its own file, see saveEntry/loadEntry
+    public static final int COPY_FORMAT_VERSION = 1; //Version of the tag written by statePosListToNBTMapArray
     private final HashMap<UUID, ArrayList<StatePos>> undoList; //GadgetUUID -> UndoList StatePosData
     private final HashMap<UUID, ArrayList<StatePos>> copyPasteLookup; //GadgetUUID -> StatePosData
     private final HashMap<UUID, ArrayList<TagPos>> teMap; //GadgetUUID -> Tile Entity Data
-    private final HashMap<UUID, PasteData> pasteChunks = new HashMap<>(); //CopyUUID -> PasteData (Assembled from multiple chunks) - Not stored in NBT because its transient
+    private final HashMap<UUID, Long> copyPasteHashes = new HashMap<>(); //GadgetUUID -> PasteData.hash of its copy data as last sent to a client, dropped whenever the data changes
+    private final HashSet<UUID> loadedUUIDs = new HashSet<>(); //UUIDs whose file has been read (or that don't have one yet)
+    private final HashSet<UUID> unreadableUUIDs = new HashSet<>(); //UUIDs whose file failed to read - retried on the next save, and never overwritten until it reads
+    private final HashSet<UUID> dirtyUUIDs = new HashSet<>(); //UUIDs changed since the last save - only these get written
+    private Path dataDir; //<world>/data/buildinggadgets2 - set by get()
 
     public BG2Data(HashMap<UUID, ArrayList<StatePos>> undoList, HashMap<UUID, ArrayList<StatePos>> copyPasteLookup, HashMap<UUID, ArrayList<TagPos>> teMap) {
         this.undoList = undoList;
@@ -34,49 +47,41 @@ public class BG2Data extends SavedData {
         this.teMap = teMap;
     }
 
-    public boolean addToPasteChunks(UUID copyUUID, int position, int totalChunks, FriendlyByteBuf pasteChunk) {
-        PasteData data = pasteChunks.computeIfAbsent(copyUUID, k -> new PasteData(totalChunks));
-        data.addChunk(position, pasteChunk);
-        return data.isComplete();
-    }
-
-    public CompoundTag getAssembledTag(UUID copyUUID) {
-        PasteData pasteData = pasteChunks.get(copyUUID);
-        FriendlyByteBuf assembledData = pasteData.assembleData();
-        CompoundTag compoundTag = assembledData.readNbt();
-        pasteChunks.remove(copyUUID);
-        return compoundTag;
-    }
-
     public boolean containsUndoList(UUID uuid) {
+        ensureLoaded(uuid);
         return undoList.containsKey(uuid);
     }
 
     public void addToUndoList(UUID uuid, ArrayList<StatePos> list, Level level) {
+        ensureLoaded(uuid);
         undoList.put(uuid, list);
-        this.setDirty();
+        markDirty(uuid);
     }
 
     public void removeFromUndoList(UUID uuid) {
+        ensureLoaded(uuid);
         undoList.remove(uuid);
-        this.setDirty();
+        markDirty(uuid);
     }
 
     public void addToCopyPaste(UUID uuid, ArrayList<StatePos> list) {
+        ensureLoaded(uuid);
         copyPasteLookup.put(uuid, list);
-        this.setDirty();
+        markDirty(uuid);
     }
 
     public void addToTEMap(UUID uuid, ArrayList<TagPos> list) {
+        ensureLoaded(uuid);
         teMap.put(uuid, list);
-        this.setDirty();
+        markDirty(uuid);
     }
 
     public ArrayList<StatePos> getCopyPasteList(UUID uuid, boolean remove) {
+        ensureLoaded(uuid);
         ArrayList<StatePos> returnList = copyPasteLookup.get(uuid);
         if (remove) {
             returnList = copyPasteLookup.remove(uuid);
-            this.setDirty();
+            markDirty(uuid);
         }
         return returnList;
     }
@@ -86,113 +91,259 @@ public class BG2Data extends SavedData {
     }
 
     public ArrayList<StatePos> peekUndoList(UUID uuid) {
+        ensureLoaded(uuid);
         ArrayList<StatePos> posList = undoList.get(uuid);
-        this.setDirty();
         return posList;
     }
 
     public ArrayList<StatePos> popUndoList(UUID uuid) {
+        ensureLoaded(uuid);
         ArrayList<StatePos> posList = undoList.remove(uuid);
-        this.setDirty();
+        markDirty(uuid);
         return posList;
     }
 
     public ArrayList<TagPos> peekTEMap(UUID uuid) {
+        ensureLoaded(uuid);
         ArrayList<TagPos> tagList = teMap.get(uuid);
         return tagList;
     }
 
     public ArrayList<TagPos> getTEMap(UUID uuid) {
+        ensureLoaded(uuid);
         ArrayList<TagPos> tagList = teMap.remove(uuid);
-        this.setDirty();
+        markDirty(uuid);
         return tagList;
     }
 
+    /**
+     * The content hash of this gadget's copy data, or null if it hasn't been computed since the data last changed
+     */
+    public Long getCopyPasteHash(UUID uuid) {
+        return copyPasteHashes.get(uuid);
+    }
+
+    public void setCopyPasteHash(UUID uuid, long hash) {
+        copyPasteHashes.put(uuid, hash);
+    }
+
+    private void markDirty(UUID uuid) {
+        copyPasteHashes.remove(uuid);
+        dirtyUUIDs.add(uuid);
+        this.setDirty();
+    }
+
+    private Path getEntryFile(UUID uuid) {
+        return dataDir.resolve(uuid + ".dat");
+    }
+
+    /**
+     * Lazily reads this UUID's file the first time its data is asked for, so we never load data nobody is using
+     */
+    private void ensureLoaded(UUID uuid) {
+        if (dataDir == null || loadedUUIDs.contains(uuid) || unreadableUUIDs.contains(uuid)) return;
+        Path file = getEntryFile(uuid);
+        if (Files.exists(file)) {
+            try {
+                loadEntry(uuid, NbtIo.readCompressed(file.toFile()));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Failed to read Building Gadgets data for {}, will retry on the next save", uuid, e);
+                unreadableUUIDs.add(uuid); //Not loaded - so saveDirtyEntries leaves the file alone rather than replacing it with whatever changed since
+                return;
+            }
+        }
+        loadedUUIDs.add(uuid);
+    }
+
+    /**
+     * Writes out only the UUIDs that changed since the last save. If a UUID has no data left its file is removed.
+     * A UUID whose file couldn't be read is never written - it stays dirty until a read succeeds.
+     */
+    private void saveDirtyEntries() {
+        try {
+            Files.createDirectories(dataDir);
+        } catch (IOException e) {
+            LOGGER.error("Failed to create Building Gadgets data directory {}", dataDir, e);
+            return;
+        }
+        for (UUID uuid : new ArrayList<>(unreadableUUIDs)) { //Try reading them again - anything changed meanwhile is merged into what's in the file
+            unreadableUUIDs.remove(uuid);
+            ensureLoaded(uuid);
+        }
+        Iterator<UUID> iterator = dirtyUUIDs.iterator();
+        while (iterator.hasNext()) {
+            UUID uuid = iterator.next();
+            if (!loadedUUIDs.contains(uuid)) continue; //Its file still doesn't read
+            Path file = getEntryFile(uuid);
+            try {
+                CompoundTag entryTag = saveEntry(uuid);
+                if (entryTag.isEmpty()) {
+                    Files.deleteIfExists(file);
+                } else {
+                    Path tempFile = dataDir.resolve(uuid + ".dat.tmp");
+                    NbtIo.writeCompressed(entryTag, tempFile.toFile());
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                iterator.remove();
+            } catch (IOException e) {
+                LOGGER.error("Failed to save Building Gadgets data for {}", uuid, e); //Leave it dirty so we try again next save
+            }
+        }
+    }
+
+    private CompoundTag saveEntry(UUID uuid) {
+        CompoundTag tag = new CompoundTag();
+        ArrayList<StatePos> undo = undoList.get(uuid);
+        if (undo != null)
+            tag.put("undolist", undoListToNBT(undo));
+        ArrayList<StatePos> copyPaste = copyPasteLookup.get(uuid);
+        if (copyPaste != null)
+            tag.put("copypaste", statePosListToNBTMapArray(copyPaste));
+        ArrayList<TagPos> teList = teMap.get(uuid);
+        if (teList != null) {
+            ListTag tempList = new ListTag();
+            for (TagPos tagPos : teList) {
+                tempList.add(tagPos.getTag());
+            }
+            tag.put("temaplist", tempList);
+        }
+        return tag;
+    }
+
+    //putIfAbsent throughout - if an earlier read failed, anything set since is newer than the file
+    private void loadEntry(UUID uuid, CompoundTag tag) {
+        if (tag.contains("undolist", Tag.TAG_COMPOUND)) {
+            undoList.putIfAbsent(uuid, undoListFromNBT(tag.getCompound("undolist")));
+        } else if (tag.contains("undolist", Tag.TAG_LIST)) { //One compound per block, as the old single-file format stored them
+            ListTag statePosList = tag.getList("undolist", Tag.TAG_COMPOUND);
+            ArrayList<StatePos> tempList = new ArrayList<>();
+            for (int j = 0; j < statePosList.size(); j++) {
+                tempList.add(new StatePos(statePosList.getCompound(j)));
+            }
+            undoList.putIfAbsent(uuid, tempList);
+        }
+        if (tag.contains("copypaste"))
+            copyPasteLookup.putIfAbsent(uuid, statePosListFromNBTMapArray(tag.getCompound("copypaste")));
+        if (tag.contains("temaplist")) {
+            ListTag temaplistTag = tag.getList("temaplist", Tag.TAG_COMPOUND);
+            ArrayList<TagPos> tagPosList = new ArrayList<>();
+            for (int j = 0; j < temaplistTag.size(); j++) {
+                tagPosList.add(new TagPos(temaplistTag.getCompound(j)));
+            }
+            teMap.putIfAbsent(uuid, tagPosList);
+        }
+    }
+
+    /**
+     * Copy/paste data covers its whole AABB, so we only store the corners, a palette, and one palette index per block in
+     * AABB order - bit-packed like vanilla's PalettedContainer. Version 1 and up use "packedstates", older data an int[] "statelist".
+     */
     public static CompoundTag statePosListToNBTMapArray(ArrayList<StatePos> list) {
         CompoundTag tag = new CompoundTag();
         if (list == null || list.isEmpty()) return tag;
-        ArrayList<BlockState> blockStateMap = StatePos.getBlockStateMap(list);
-        ListTag blockStateMapList = StatePos.getBlockStateNBT(blockStateMap);
-        int[] blocklist = new int[list.size()];
-        final int[] counter = {0};
         BlockPos start = list.get(0).pos;
         BlockPos end = list.get(list.size() - 1).pos;
-        AABB aabb = new AABB(start, end);
-
-        Map<BlockPos, BlockState> blockStateByPos = list.stream()
-                .collect(Collectors.toMap(e -> e.pos, e -> e.state));
-
-        BlockPos.betweenClosedStream(aabb).map(BlockPos::immutable).forEach(pos -> {
-            BlockState blockState = blockStateByPos.get(pos);
-            blocklist[counter[0]++] = blockStateMap.indexOf(blockState);
-        });
-        /*for (StatePos statePos : list) {
-            blocklist[k] = blockStateMap.indexOf(statePos.state);
-            k++;
-        }*/
+        int minX = Math.min(start.getX(), end.getX()), minY = Math.min(start.getY(), end.getY()), minZ = Math.min(start.getZ(), end.getZ());
+        int sizeX = Math.abs(end.getX() - start.getX()) + 1, sizeY = Math.abs(end.getY() - start.getY()) + 1, sizeZ = Math.abs(end.getZ() - start.getZ()) + 1;
+
+        //Single pass over the list - each entry's slot in AABB order (x, then y, then z, same as BlockPos.betweenClosed) comes straight from its position
+        Reference2IntOpenHashMap<BlockState> paletteLookup = new Reference2IntOpenHashMap<>();
+        ArrayList<BlockState> blockStateMap = new ArrayList<>();
+        int[] blocklist = new int[getVolume(start, end)];
+        for (StatePos statePos : list) {
+            int x = statePos.pos.getX() - minX, y = statePos.pos.getY() - minY, z = statePos.pos.getZ() - minZ;
+            if (x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ) continue; //Outside the corners, can't be stored
+            blocklist[x + sizeX * (y + sizeY * z)] = paletteLookup.computeIfAbsent(statePos.state, k -> {
+                blockStateMap.add(statePos.state);
+                return blockStateMap.size() - 1;
+            });
+        }
+        int bits = getPaletteBits(blockStateMap.size());
+        tag.putInt("version", COPY_FORMAT_VERSION);
         tag.put("startpos", NbtUtils.writeBlockPos(start));
         tag.put("endpos", NbtUtils.writeBlockPos(end));
-        tag.put("blockstatemap", blockStateMapList);
-        tag.putIntArray("statelist", blocklist); //Todo - Short Array?
+        tag.put("blockstatemap", StatePos.getBlockStateNBT(blockStateMap));
+        tag.putInt("bits", bits);
+        tag.putLongArray("packedstates", new SimpleBitStorage(bits, blocklist.length, blocklist).getRaw());
         return tag;
     }
 
+    /**
+     * Undo lists are sparse, so unlike copy/paste data we store every position - delta encoded from the previous one - along
+     * with a palette index per block, bit-packed to the minimum width the palette needs.
+     */
+    public static CompoundTag undoListToNBT(ArrayList<StatePos> list) {
+        CompoundTag tag = new CompoundTag();
+        Reference2IntOpenHashMap<BlockState> paletteLookup = new Reference2IntOpenHashMap<>();
+        ArrayList<BlockState> palette = new ArrayList<>();
+        long[] positions = new long[list.size()];
+        int[] stateIndexes = new int[list.size()];
+        long lastPos = 0;
+        for (int i = 0; i < list.size(); i++) {
+            StatePos statePos = list.get(i);
+            long pos = statePos.pos.asLong();
+            positions[i] = pos - lastPos;
+            lastPos = pos;
+            stateIndexes[i] = paletteLookup.computeIfAbsent(statePos.state, k -> {
+                palette.add(statePos.state);
+                return palette.size() - 1;
+            });
+        }
+        int bits = getPaletteBits(palette.size());
+        tag.put("blockstatemap", StatePos.getBlockStateNBT(palette));
+        tag.putLongArray("positions", positions);
+        tag.putInt("bits", bits);
+        tag.putLongArray("states", new SimpleBitStorage(bits, stateIndexes.length, stateIndexes).getRaw());
+        return tag;
+    }
+
+    public static ArrayList<StatePos> undoListFromNBT(CompoundTag tag) {
+        ArrayList<BlockState> palette = StatePos.getBlockStateMapFromNBT(tag.getList("blockstatemap", Tag.TAG_COMPOUND));
+        long[] positions = tag.getLongArray("positions");
+        ArrayList<StatePos> list = new ArrayList<>(positions.length);
+        if (positions.length == 0) return list;
+        SimpleBitStorage stateIndexes = new SimpleBitStorage(tag.getInt("bits"), positions.length, tag.getLongArray("states"));
+        long pos = 0;
+        for (int i = 0; i < positions.length; i++) {
+            pos += positions[i];
+            list.add(new StatePos(palette.get(stateIndexes.get(i)), BlockPos.of(pos)));
+        }
+        return list;
+    }
+
+    /**
+     * Bits needed per entry to index a palette of this size - at least 1, since SimpleBitStorage doesn't support 0
+     */
+    public static int getPaletteBits(int paletteSize) {
+        return paletteSize <= 2 ? 1 : Mth.ceillog2(paletteSize);
+    }
+
     public static ArrayList<StatePos> statePosListFromNBTMapArray(CompoundTag tag) {
-        ArrayList<StatePos> statePosList = new ArrayList<>();
-        if (!tag.contains("blockstatemap") || !tag.contains("statelist")) return statePosList;
-        ArrayList<BlockState> blockStateMap = StatePos.getBlockStateMapFromNBT(tag.getList("blockstatemap", Tag.TAG_COMPOUND));
-        BlockPos start = NbtUtils.readBlockPos(tag.getCompound("startpos"));
-        BlockPos end = NbtUtils.readBlockPos(tag.getCompound("endpos"));
-        AABB aabb = new AABB(start, end);
-        int[] blocklist = tag.getIntArray("statelist");
-        final int[] counter = {0};
-        BlockPos.betweenClosedStream(aabb).map(BlockPos::immutable).forEach(pos -> {
-            int blockStateLookup = blocklist[counter[0]++];
-            BlockState blockState = blockStateMap.get(blockStateLookup);
-            statePosList.add(new StatePos(blockState, pos));
-        });
-        return statePosList;
+        return BlockBuffer.fromNBT(tag).toStatePosList();
+    }
+
+    public static int getVolume(BlockPos start, BlockPos end) {
+        return (Math.abs(end.getX() - start.getX()) + 1) * (Math.abs(end.getY() - start.getY()) + 1) * (Math.abs(end.getZ() - start.getZ()) + 1);
     }
 
     @Override
     public CompoundTag save(CompoundTag nbt) {
-        ListTag undoTagList = new ListTag();
-        for (Map.Entry<UUID, ArrayList<StatePos>> entry : undoList.entrySet()) {
-            CompoundTag tempTag = new CompoundTag();
-            tempTag.putUUID("uuid", entry.getKey());
-            ListTag tempList = new ListTag();
-            for (StatePos statePos : entry.getValue()) {
-                tempList.add(statePos.getTag());
-            }
-            tempTag.put("stateposlist", tempList);
-            undoTagList.add(tempTag);
-        }
-        nbt.put("undolist", undoTagList);
-
-        ListTag copyPasteTag = new ListTag();
-        for (Map.Entry<UUID, ArrayList<StatePos>> entry : copyPasteLookup.entrySet()) {
-            CompoundTag tempTag = new CompoundTag();
-            tempTag.putUUID("uuid", entry.getKey());
-            tempTag.put("stateposlist", statePosListToNBTMapArray(entry.getValue()));
-            copyPasteTag.add(tempTag);
-        }
-        nbt.put("copypaste", copyPasteTag);
-
-        ListTag teMapTag = new ListTag();
-        for (Map.Entry<UUID, ArrayList<TagPos>> entry : teMap.entrySet()) {
-            CompoundTag tempTag = new CompoundTag();
-            tempTag.putUUID("uuid", entry.getKey());
-            ListTag tempList = new ListTag();
-            for (TagPos tagPos : entry.getValue()) {
-                tempList.add(tagPos.getTag());
-            }
-            tempTag.put("temaplist", tempList);
-            teMapTag.add(tempTag);
-        }
-        nbt.put("temaptag", teMapTag);
+        if (dataDir != null)
+            saveDirtyEntries();
+        nbt.putInt("version", VERSION);
         return nbt;
     }
 
+    /**
+     * SavedData clears the dirty flag once it's written, so set it again if some UUIDs didn't make it - otherwise they'd wait for an unrelated change
+     */
+    @Override
+    public void save(File file) {
+        super.save(file);
+        if (!dirtyUUIDs.isEmpty())
+            setDirty();
+    }
+
     public static BG2Data readNbt(CompoundTag nbt) {
         HashMap<UUID, ArrayList<StatePos>> undoList = new HashMap<>();
         ListTag undoTagList = nbt.getList("undolist", Tag.TAG_COMPOUND);
@@ -226,12 +377,19 @@ public class BG2Data extends SavedData {
             }
             teMap.put(uuid, tagPosList);
         }
-        return new BG2Data(undoList, copyPaste, teMap);
+        BG2Data bg2Data = new BG2Data(undoList, copyPaste, teMap);
+        //Anything read here is from the old single-file format - mark it all dirty so the next save moves it into per-UUID files
+        for (UUID uuid : undoList.keySet()) bg2Data.markDirty(uuid);
+        for (UUID uuid : copyPaste.keySet()) bg2Data.markDirty(uuid);
+        for (UUID uuid : teMap.keySet()) bg2Data.markDirty(uuid);
+        bg2Data.loadedUUIDs.addAll(bg2Data.dirtyUUIDs);
+        return bg2Data;
     }
 
     public static BG2Data get(ServerLevel world) {
         BG2Data bg2Data = world.getDataStorage().computeIfAbsent(BG2Data::readNbt, () -> new BG2Data(new HashMap<>(), new HashMap<>(), new HashMap<>()), NAME);
-        bg2Data.setDirty();
+        if (bg2Data.dataDir == null)
+            bg2Data.dataDir = world.getServer().getWorldPath(LevelResource.ROOT).resolve("data").resolve(NAME);
         return bg2Data;
     }
 }
@@ -1,25 +1,152 @@
 package com.direwolf20.buildinggadgets2.common.worlddata;
 
 import com.direwolf20.buildinggadgets2.common.network.PacketHandler;
+import com.direwolf20.buildinggadgets2.common.network.packets.PacketCopyDataAck;
 import com.direwolf20.buildinggadgets2.common.network.packets.PacketRequestCopyData;
 import com.direwolf20.buildinggadgets2.util.GadgetNBT;
+import com.direwolf20.buildinggadgets2.util.WorkerPool;
+import com.direwolf20.buildinggadgets2.util.datatypes.BlockBuffer;
+import com.direwolf20.buildinggadgets2.util.datatypes.PasteData;
 import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
+import com.mojang.logging.LogUtils;
+import io.netty.buffer.ByteBuf;
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.chat.Component;
 import net.minecraft.world.item.ItemStack;
+import org.slf4j.Logger;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.UUID;
 
 public class BG2DataClient {
-    private static final HashMap<UUID, ArrayList<StatePos>> copyPasteLookup = new HashMap<>();
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final HashMap<UUID, BlockBuffer> copyPasteLookup = new HashMap<>(); //GadgetUUID -> packed copy data, as sent by the server
+    private static final HashMap<UUID, ArrayList<StatePos>> statePosLookup = new HashMap<>(); //GadgetUUID -> copy data unpacked to a list, only built if something asks for it
     private static final HashMap<UUID, UUID> copyPasteCache = new HashMap<>();
+    private static final HashMap<UUID, PasteData> copyDataChunks = new HashMap<>(); //GadgetUUID -> Copy data still being received from the server
+    private static final HashMap<UUID, Rotation> rotations = new HashMap<>(); //GadgetUUID -> Rotation of our copy that isn't in the CopyDataCache yet
     public static boolean awaitingUpdate = false;
     public static int updateTimer = 0;
 
-    public static void updateLookupFromNBT(UUID gadgetUUID, UUID copyUUID, ArrayList<StatePos> list) {
-        if (copyPasteLookup.containsKey(gadgetUUID))
-            copyPasteLookup.remove(gadgetUUID);
-        copyPasteLookup.put(gadgetUUID, list); //Store GadgetUUID -> list of blocks
+    //A rotation the server told us about - it goes in the CopyDataCache once both the worker is done and the server's hash is in, whichever comes last
+    private static class Rotation {
+        private final UUID copyUUID;
+        private BlockBuffer blockBuffer; //Null while the worker is still rotating
+        private ByteBuf payload;
+        private Long hash; //Null until the PacketCopyDataHash arrives
+
+        private Rotation(UUID copyUUID) {
+            this.copyUUID = copyUUID;
+        }
+
+        private void release() {
+            if (payload != null) payload.release();
+            payload = null;
+        }
+    }
+
+    private record Rotated(BlockBuffer blockBuffer, ByteBuf payload) {
+    }
+
+    /**
+     * Chunks of a transfer always arrive in order, and a new transfer for the same gadget starts at 0 - so that's when any unfinished one gets dropped
+     */
+    public static void addCopyDataChunk(UUID gadgetUUID, UUID copyUUID, int position, int totalChunks, ByteBuf chunk) {
+        if (position == 0) {
+            PasteData old = copyDataChunks.remove(gadgetUUID);
+            if (old != null) old.release();
+        }
+        PasteData pasteData = copyDataChunks.computeIfAbsent(gadgetUUID, k -> new PasteData(totalChunks));
+        pasteData.addChunk(position, chunk);
+        PacketHandler.sendToServer(new PacketCopyDataAck(gadgetUUID, copyUUID, position)); //Lets the server send the next chunks
+        updateTimer = 0; //Still receiving, so don't re-request yet
+        if (totalChunks > 1 && Minecraft.getInstance().player != null)
+            Minecraft.getInstance().player.displayClientMessage(Component.translatable("buildinggadgets2.messages.receivingcopy", (position + 1) * 100 / totalChunks), true);
+        if (!pasteData.isComplete())
+            return;
+        copyDataChunks.remove(gadgetUUID);
+        ByteBuf payload = pasteData.assemble();
+        try {
+            long hash = PasteData.hash(payload);
+            BlockBuffer blockBuffer = BlockBuffer.fromNBT(PasteData.decompress(payload.duplicate()));
+            CopyDataCache.put(copyUUID, hash, blockBuffer, payload);
+            updateLookupFromNBT(gadgetUUID, copyUUID, blockBuffer);
+        } finally {
+            payload.release();
+        }
+    }
+
+    /**
+     * The server told us what we have cached for this copy is still current, so use that instead
+     */
+    public static void useCachedCopyData(UUID gadgetUUID, UUID copyUUID) {
+        BlockBuffer blockBuffer = CopyDataCache.get(copyUUID);
+        if (blockBuffer == null) { //Evicted since we asked, so ask again for the real thing
+            PacketHandler.sendToServer(new PacketRequestCopyData(gadgetUUID, copyUUID, 0));
+            return;
+        }
+        updateLookupFromNBT(gadgetUUID, copyUUID, blockBuffer);
+    }
+
+    /**
+     * Applies a rotation the server did to the copy we already have - if we don't have it, we'll just request the new one as usual.
+     * Rotating and encoding a big copy takes a while, so it's done on a worker - isClientUpToDate holds off on requesting it meanwhile.
+     */
+    public static void rotateCopyData(UUID gadgetUUID, UUID oldCopyUUID, UUID newCopyUUID) {
+        BlockBuffer blockBuffer = oldCopyUUID.equals(copyPasteCache.get(gadgetUUID)) ? copyPasteLookup.get(gadgetUUID) : CopyDataCache.get(oldCopyUUID);
+        if (blockBuffer == null) return;
+        Rotation rotation = new Rotation(newCopyUUID);
+        Rotation previous = rotations.put(gadgetUUID, rotation);
+        if (previous != null) previous.release();
+        WorkerPool.submit(Minecraft.getInstance(), () -> {
+            try {
+                BlockBuffer rotated = blockBuffer.rotate90();
+                return new Rotated(rotated, PasteData.compress(rotated.toNBT()));
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to rotate copy data for gadget {}", gadgetUUID, e);
+                return null; //Drop the rotation, so the new copy gets requested from the server instead
+            }
+        }, rotated -> {
+            if (rotations.get(gadgetUUID) != rotation) { //Rotated again while we were at it
+                if (rotated != null) rotated.payload.release();
+                return;
+            }
+            if (rotated == null) {
+                rotations.remove(gadgetUUID);
+                return;
+            }
+            rotation.blockBuffer = rotated.blockBuffer;
+            rotation.payload = rotated.payload;
+            updateLookupFromNBT(gadgetUUID, newCopyUUID, rotated.blockBuffer);
+            if (rotation.hash != null)
+                cacheRotation(gadgetUUID, rotation);
+        });
+    }
+
+    /**
+     * The server's hash for a copy it told us to rotate - needed before the rotated copy can go in the CopyDataCache
+     */
+    public static void setRotatedHash(UUID gadgetUUID, UUID copyUUID, long hash) {
+        Rotation rotation = rotations.get(gadgetUUID);
+        if (rotation == null || !rotation.copyUUID.equals(copyUUID)) return; //Rotated again since, or we didn't have the copy to rotate
+        rotation.hash = hash;
+        if (rotation.payload != null)
+            cacheRotation(gadgetUUID, rotation);
+    }
+
+    private static void cacheRotation(UUID gadgetUUID, Rotation rotation) {
+        rotations.remove(gadgetUUID);
+        try {
+            CopyDataCache.put(rotation.copyUUID, rotation.hash, rotation.blockBuffer, rotation.payload);
+        } finally {
+            rotation.release();
+        }
+    }
+
+    public static void updateLookupFromNBT(UUID gadgetUUID, UUID copyUUID, BlockBuffer blockBuffer) {
+        copyPasteLookup.put(gadgetUUID, blockBuffer); //Store GadgetUUID -> buffer of blocks
+        statePosLookup.remove(gadgetUUID);
 
         if (copyPasteCache.containsKey(gadgetUUID))
             copyPasteCache.remove(gadgetUUID);
@@ -38,23 +165,32 @@ public class BG2DataClient {
         UUID copyPasteUUIDCache = copyPasteCache.get(gadgetUUID); //Get the CopyUUID of this gadget thats cached here
         if (copyPasteUUIDCache != null && copyPasteUUIDCache.equals(copyUUID)) //If the Cache'd UUID of the copy/paste matches whats on the item, we don't need to rebuild the render
             return true; //No need to rebuild cache because its up to date!
+        Rotation rotation = rotations.get(gadgetUUID);
+        if (rotation != null && rotation.blockBuffer == null && rotation.copyUUID.equals(copyUUID))
+            return false; //Still rotating the copy we have into this one, no need to download it
         //This classes data is not up to date - request it from server
         if (awaitingUpdate && updateTimer < 100) { //If we already requested an update from the server, don't try again for a few seconds
             updateTimer++;
             return false; //Since we're still awaiting an update, we're not good yet!
         }
         //Actually request the update from the server
-        PacketHandler.sendToServer(new PacketRequestCopyData(gadgetUUID, copyUUID));
+        PacketHandler.sendToServer(new PacketRequestCopyData(gadgetUUID, copyUUID, CopyDataCache.getHash(copyUUID)));
         awaitingUpdate = true;
         updateTimer = 0;
         return false;
     }
 
 
-    public static ArrayList<StatePos> getLookupFromUUID(UUID gadgetUUID) {
+    public static BlockBuffer getBufferFromUUID(UUID gadgetUUID) {
         return copyPasteLookup.get(gadgetUUID);
     }
 
+    public static ArrayList<StatePos> getLookupFromUUID(UUID gadgetUUID) {
+        BlockBuffer blockBuffer = copyPasteLookup.get(gadgetUUID);
+        if (blockBuffer == null) return null;
+        return statePosLookup.computeIfAbsent(gadgetUUID, k -> blockBuffer.toStatePosList());
+    }
+
     public static UUID getCopyUUID(UUID gadgetUUID) {
         return copyPasteCache.get(gadgetUUID);
     }
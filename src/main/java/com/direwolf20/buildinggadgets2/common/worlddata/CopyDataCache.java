@@ -0,0 +1,181 @@
+package com.direwolf20.buildinggadgets2.common.worlddata;
+
+import com.direwolf20.buildinggadgets2.util.datatypes.BlockBuffer;
+import com.direwolf20.buildinggadgets2.util.datatypes.PasteData;
+import com.mojang.logging.LogUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraftforge.fml.loading.FMLPaths;
+import org.slf4j.Logger;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Client side cache of copy/paste data we've received, keyed by copyUUID and tagged with the server's content hash (PasteData.hash).
+ * Recently used buffers stay decoded in memory, and every payload is also written (still compressed) to disk so it survives relogs.
+ * Both tiers evict least recently used entries once over their size cap.
+ */
+public class CopyDataCache {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final long MEMORY_CAP_BLOCKS = 16_000_000; //Total blocks kept decoded in memory
+    private static final long DISK_CAP_BYTES = 256L * 1024 * 1024; //Total size of the compressed payloads on disk
+    private static final LinkedHashMap<UUID, Entry> memoryCache = new LinkedHashMap<>(16, 0.75f, true); //CopyUUID -> Entry, in access order
+    private static final LinkedHashMap<UUID, Long> diskIndex = new LinkedHashMap<>(16, 0.75f, true); //CopyUUID -> File size, in access order
+    private static long memoryBlocks = 0;
+    private static long diskBytes = 0;
+    private static boolean diskIndexLoaded = false;
+
+    private record Entry(long hash, BlockBuffer blockBuffer) {
+    }
+
+    private static Path getCacheDir() {
+        return FMLPaths.GAMEDIR.get().resolve("buildinggadgets2").resolve("copycache");
+    }
+
+    private static Path getCacheFile(UUID copyUUID) {
+        return getCacheDir().resolve(copyUUID + ".bin");
+    }
+
+    /**
+     * The content hash of what we have cached for this copy, or 0 if we don't have it
+     */
+    public static long getHash(UUID copyUUID) {
+        Entry entry = memoryCache.get(copyUUID);
+        if (entry != null) return entry.hash;
+        loadDiskIndex();
+        if (!diskIndex.containsKey(copyUUID)) return 0;
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(getCacheFile(copyUUID)))) {
+            return input.readLong();
+        } catch (IOException e) {
+            removeFromDisk(copyUUID);
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the cached buffer, reading it back from disk if it's not in memory anymore - or null if we don't have it at all
+     */
+    public static BlockBuffer get(UUID copyUUID) {
+        Entry entry = memoryCache.get(copyUUID);
+        if (entry != null) return entry.blockBuffer;
+        loadDiskIndex();
+        if (diskIndex.get(copyUUID) == null) return null; //get rather than containsKey, to bump it in the access order
+        Path file = getCacheFile(copyUUID);
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(file))) {
+            long hash = input.readLong();
+            ByteBuf payload = Unpooled.wrappedBuffer(input.readAllBytes());
+            BlockBuffer blockBuffer = BlockBuffer.fromNBT(PasteData.decompress(payload));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis())); //So eviction order survives restarts
+            putInMemory(copyUUID, new Entry(hash, blockBuffer));
+            return blockBuffer;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Discarding unreadable cached copy data {}", copyUUID, e);
+            removeFromDisk(copyUUID);
+            return null;
+        }
+    }
+
+    /**
+     * Caches freshly received data. The payload is the compressed tag exactly as the server sent it - it's not consumed or released here.
+     */
+    public static void put(UUID copyUUID, long hash, BlockBuffer blockBuffer, ByteBuf payload) {
+        putInMemory(copyUUID, new Entry(hash, blockBuffer));
+        loadDiskIndex();
+        Path file = getCacheFile(copyUUID);
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (OutputStream fileOutput = Files.newOutputStream(tempFile); DataOutputStream output = new DataOutputStream(fileOutput)) {
+                output.writeLong(hash);
+                payload.getBytes(payload.readerIndex(), output, payload.readableBytes());
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to cache copy data {}", copyUUID, e);
+            return;
+        }
+        Long oldSize = diskIndex.put(copyUUID, Long.BYTES + (long) payload.readableBytes());
+        diskBytes += Long.BYTES + payload.readableBytes() - (oldSize == null ? 0 : oldSize);
+        trimDisk();
+    }
+
+    private static void putInMemory(UUID copyUUID, Entry entry) {
+        Entry old = memoryCache.put(copyUUID, entry);
+        memoryBlocks += entry.blockBuffer.size() - (old == null ? 0 : old.blockBuffer.size());
+        Iterator<Entry> iterator = memoryCache.values().iterator();
+        while (memoryBlocks > MEMORY_CAP_BLOCKS && memoryCache.size() > 1 && iterator.hasNext()) { //Always keep the newest, even if it's huge
+            memoryBlocks -= iterator.next().blockBuffer.size();
+            iterator.remove();
+        }
+    }
+
+    private static void trimDisk() {
+        Iterator<Map.Entry<UUID, Long>> iterator = diskIndex.entrySet().iterator();
+        while (diskBytes > DISK_CAP_BYTES && diskIndex.size() > 1 && iterator.hasNext()) {
+            Map.Entry<UUID, Long> eldest = iterator.next();
+            iterator.remove();
+            diskBytes -= eldest.getValue();
+            try {
+                Files.deleteIfExists(getCacheFile(eldest.getKey()));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to evict cached copy data {}", eldest.getKey(), e);
+            }
+        }
+    }
+
+    private static void removeFromDisk(UUID copyUUID) {
+        Long size = diskIndex.remove(copyUUID);
+        if (size != null) diskBytes -= size;
+        try {
+            Files.deleteIfExists(getCacheFile(copyUUID));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to remove cached copy data {}", copyUUID, e);
+        }
+    }
+
+    /**
+     * Scans the cache directory once, oldest files first, so the access order picks up where the last session left off
+     */
+    private static void loadDiskIndex() {
+        if (diskIndexLoaded) return;
+        diskIndexLoaded = true;
+        Path dir = getCacheDir();
+        if (!Files.isDirectory(dir)) return;
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.filter(path -> path.getFileName().toString().endsWith(".bin")).forEach(files::add);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read copy data cache directory {}", dir, e);
+            return;
+        }
+        files.sort(Comparator.comparingLong(CopyDataCache::getLastModified));
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            try {
+                UUID copyUUID = UUID.fromString(name.substring(0, name.length() - ".bin".length()));
+                long size = Files.size(file);
+                diskIndex.put(copyUUID, size);
+                diskBytes += size;
+            } catch (IllegalArgumentException | IOException ignored) {
+            }
+        }
+        trimDisk();
+    }
+
+    private static long getLastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -30,6 +30,8 @@ public class Config {
     public static ForgeConfigSpec.IntValue DESTRUCTIONGADGET_COST;
 
     public static ForgeConfigSpec.IntValue RAYTRACE_RANGE;
+    public static ForgeConfigSpec.IntValue BUILD_TICK_BUDGET;
+    public static ForgeConfigSpec.BooleanValue CONSTRUCTION_OVERLAY;
 
     public static void register() {
         //registerServerConfigs();
@@ -64,6 +66,10 @@ public class Config {
     private static void generalConfig() {
         RAYTRACE_RANGE = COMMON_BUILDER.comment("Maximum distance you can build at")
                 .defineInRange("rayTraceRange", 32, 1, 64);
+        BUILD_TICK_BUDGET = COMMON_BUILDER.comment("Time (in microseconds) all in-progress builds may share each server tick. Split evenly between players, unfinished work carries over to the next tick")
+                .defineInRange("buildTickBudget", 10000, 500, 50000);
+        CONSTRUCTION_OVERLAY = COMMON_BUILDER.comment("Animate building, destroying and cutting from a per-chunk overlay instead of a temporary block entity per block, setting the real block directly once done. Always uses the grow animation, and only covers plain model blocks placed into air - everything else (and exchanging) still uses the temporary block")
+                .define("constructionOverlay", false);
     }
 
     private static void powerConfig() {
@@ -1,6 +1,11 @@
 package com.direwolf20.buildinggadgets2.setup;
 
 import com.direwolf20.buildinggadgets2.BuildingGadgets2;
+import com.direwolf20.buildinggadgets2.common.events.ConstructionOverlay;
+import com.direwolf20.buildinggadgets2.common.events.CopyDataStreamer;
+import com.direwolf20.buildinggadgets2.common.events.PasteUploads;
+import com.direwolf20.buildinggadgets2.common.events.RenderBlockScheduler;
+import com.direwolf20.buildinggadgets2.common.events.RenderBlockSync;
 import com.direwolf20.buildinggadgets2.common.events.ServerTickHandler;
 import com.direwolf20.buildinggadgets2.common.network.PacketHandler;
 import com.direwolf20.buildinggadgets2.integration.AE2Integration;
@@ -20,6 +25,11 @@ public class ModSetup {
     public static void init(final FMLCommonSetupEvent event) {
         PacketHandler.register();
         MinecraftForge.EVENT_BUS.register(ServerTickHandler.class);
+        MinecraftForge.EVENT_BUS.register(CopyDataStreamer.class);
+        MinecraftForge.EVENT_BUS.register(PasteUploads.class);
+        MinecraftForge.EVENT_BUS.register(ConstructionOverlay.class);
+        MinecraftForge.EVENT_BUS.register(RenderBlockSync.class);
+        MinecraftForge.EVENT_BUS.register(RenderBlockScheduler.class);
         if (AE2Integration.isLoaded()) {
             AE2Methods.registerItems();
         }
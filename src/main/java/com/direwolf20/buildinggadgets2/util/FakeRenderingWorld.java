@@ -1,6 +1,8 @@
 package com.direwolf20.buildinggadgets2.util;
 
+import com.direwolf20.buildinggadgets2.util.datatypes.BlockBuffer;
 import com.direwolf20.buildinggadgets2.util.datatypes.StatePos;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.multiplayer.ClientLevel;
 import net.minecraft.core.BlockPos;
@@ -50,7 +52,9 @@ import java.util.List;
 import java.util.function.Predicate;
 
 public class FakeRenderingWorld implements LevelAccessor {
-    public final HashMap<BlockPos, BlockState> positions = new HashMap<>();
+    public final HashMap<BlockPos, BlockState> positions = new HashMap<>(); //The fake blocks, unless they come from a BlockBuffer
+    private BlockBuffer blockBuffer; //Copy/Paste renders read their blocks straight from the packed buffer instead
+    private final Long2ObjectOpenHashMap<BlockState> adjustedStates = new Long2ObjectOpenHashMap<>(); //The buffer's blocks that neighbour shapes changed, by packed position
     private Level realWorld;
     private BlockPos lookingAt;
 
@@ -70,6 +74,26 @@ public class FakeRenderingWorld implements LevelAccessor {
         }
     }
 
+    /**
+     * Wraps the buffer rather than copying it - only the blocks whose state changed from their neighbours' shapes are kept here
+     */
+    public FakeRenderingWorld(Level rWorld, BlockBuffer blockBuffer, BlockPos lookingAt) {
+        this.realWorld = rWorld;
+        this.lookingAt = lookingAt;
+        this.blockBuffer = blockBuffer;
+        BlockBuffer.Cursor cursor = blockBuffer.cursor();
+        while (cursor.next()) {
+            if (cursor.state().isAir()) continue;
+            try {
+                BlockState adjustedState = Block.updateFromNeighbourShapes(cursor.state(), this, cursor.pos());
+                if (adjustedState != cursor.state())
+                    adjustedStates.put(cursor.pos().asLong(), adjustedState);
+            } catch (Exception e) {
+                System.out.println(e);
+            }
+        }
+    }
+
     @Nullable
     @Override
     public BlockEntity getBlockEntity(BlockPos pos) {
@@ -84,11 +108,23 @@ public class FakeRenderingWorld implements LevelAccessor {
 
     @Override
     public BlockState getBlockState(BlockPos pos) {
-        return positions.containsKey(pos) ? positions.get(pos) : realWorld.getBlockState(pos.offset(lookingAt));
+        BlockState state = getFakeState(pos);
+        return state != null ? state : realWorld.getBlockState(pos.offset(lookingAt));
     }
 
     public BlockState getBlockStateWithoutReal(BlockPos pos) {
-        return positions.containsKey(pos) ? positions.get(pos) : Blocks.AIR.defaultBlockState();
+        BlockState state = getFakeState(pos);
+        return state != null ? state : Blocks.AIR.defaultBlockState();
+    }
+
+    //The fake block at pos, or null if there isn't one
+    @Nullable
+    private BlockState getFakeState(BlockPos pos) {
+        if (blockBuffer != null && blockBuffer.contains(pos.getX(), pos.getY(), pos.getZ())) {
+            BlockState adjustedState = adjustedStates.get(pos.asLong());
+            return adjustedState != null ? adjustedState : blockBuffer.getState(pos.getX(), pos.getY(), pos.getZ());
+        }
+        return positions.get(pos);
     }
 
     @Override
@@ -103,7 +139,10 @@ public class FakeRenderingWorld implements LevelAccessor {
 
     @Override
     public boolean setBlock(BlockPos pos, BlockState state, int p_46949_, int p_46950_) {
-        positions.put(pos, state);
+        if (blockBuffer != null && blockBuffer.contains(pos.getX(), pos.getY(), pos.getZ()))
+            adjustedStates.put(pos.asLong(), state);
+        else
+            positions.put(pos.immutable(), state);
         return true;
     }
 
@@ -0,0 +1,39 @@
+package com.direwolf20.buildinggadgets2.util;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A small, bounded pool for CPU heavy work that doesn't touch the world - like encoding or decoding copy data - so it stays off the server (or client) thread.
+ * If the queue is full the work runs on the calling thread instead, which is no worse than before the pool existed.
+ */
+public class WorkerPool {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int QUEUE_SIZE = 64;
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+        Thread thread = new Thread(runnable, "BuildingGadgets2-Worker-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+    /**
+     * Runs work on the pool, then hands its result to then on the given main thread - the MinecraftServer, or Minecraft on the client.
+     * If work throws, it's logged and then is never called.
+     */
+    public static <T> void submit(Executor mainThread, Supplier<T> work, Consumer<T> then) {
+        CompletableFuture.supplyAsync(work, EXECUTOR).whenComplete((result, error) -> {
+            if (error != null) {
+                LOGGER.error("Building Gadgets background task failed", error);
+                return;
+            }
+            mainThread.execute(() -> then.accept(result));
+        });
+    }
+}
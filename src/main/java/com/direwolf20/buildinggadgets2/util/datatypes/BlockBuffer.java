@@ -0,0 +1,208 @@
+package com.direwolf20.buildinggadgets2.util.datatypes;
+
+import com.direwolf20.buildinggadgets2.common.worlddata.BG2Data;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.nbt.Tag;
+import net.minecraft.util.SimpleBitStorage;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.Rotation;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.ArrayList;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Read-only view over copy/paste data as it's stored by BG2Data.statePosListToNBTMapArray - a palette plus one (packed) palette
+ * index per block of the AABB. Nothing is unpacked up front, so decoding a copy doesn't allocate a StatePos per block.
+ * Positions are in the copy's own space, the same as the StatePos list it was written from.
+ */
+public class BlockBuffer {
+    public static final BlockBuffer EMPTY = new BlockBuffer(BlockPos.ZERO, BlockPos.ZERO, new ArrayList<>(), i -> 0, 0);
+
+    private final BlockPos start;
+    private final BlockPos end;
+    private final int minX, minY, minZ;
+    private final int sizeX, sizeY, sizeZ;
+    private final int size;
+    private final ArrayList<BlockState> palette;
+    private final IntUnaryOperator stateIndexes;
+
+    private BlockBuffer(BlockPos start, BlockPos end, ArrayList<BlockState> palette, IntUnaryOperator stateIndexes, int size) {
+        this.start = start;
+        this.end = end;
+        this.minX = Math.min(start.getX(), end.getX());
+        this.minY = Math.min(start.getY(), end.getY());
+        this.minZ = Math.min(start.getZ(), end.getZ());
+        this.sizeX = Math.abs(end.getX() - start.getX()) + 1;
+        this.sizeY = Math.abs(end.getY() - start.getY()) + 1;
+        this.sizeZ = Math.abs(end.getZ() - start.getZ()) + 1;
+        this.size = size;
+        this.palette = palette;
+        this.stateIndexes = stateIndexes;
+    }
+
+    public static BlockBuffer fromNBT(CompoundTag tag) {
+        if (!tag.contains("blockstatemap") || !(tag.contains("packedstates") || tag.contains("statelist"))) return EMPTY;
+        ArrayList<BlockState> palette = StatePos.getBlockStateMapFromNBT(tag.getList("blockstatemap", Tag.TAG_COMPOUND));
+        BlockPos start = NbtUtils.readBlockPos(tag.getCompound("startpos"));
+        BlockPos end = NbtUtils.readBlockPos(tag.getCompound("endpos"));
+        int size = (Math.abs(end.getX() - start.getX()) + 1) * (Math.abs(end.getY() - start.getY()) + 1) * (Math.abs(end.getZ() - start.getZ()) + 1);
+        if (tag.getInt("version") >= 1) {
+            SimpleBitStorage packedStates = new SimpleBitStorage(tag.getInt("bits"), size, tag.getLongArray("packedstates"));
+            return new BlockBuffer(start, end, palette, packedStates::get, size);
+        }
+        int[] statelist = tag.getIntArray("statelist"); //Old format, one int per block
+        return new BlockBuffer(start, end, palette, i -> statelist[i], Math.min(size, statelist.length));
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The first corner, same as the first entry of the StatePos list this was written from
+     */
+    public BlockPos getStart() {
+        return start;
+    }
+
+    /**
+     * The opposite corner, same as the last entry of the StatePos list this was written from
+     */
+    public BlockPos getEnd() {
+        return end;
+    }
+
+    public ArrayList<BlockState> getPalette() {
+        return palette;
+    }
+
+    public BlockState getState(int index) {
+        return palette.get(stateIndexes.applyAsInt(index));
+    }
+
+    /**
+     * Random access by position - returns air for anything outside the buffer
+     */
+    public BlockState getState(int x, int y, int z) {
+        int index = indexOf(x, y, z);
+        return index < 0 ? Blocks.AIR.defaultBlockState() : getState(index);
+    }
+
+    /**
+     * Whether the buffer has a block (air included) at this position
+     */
+    public boolean contains(int x, int y, int z) {
+        return indexOf(x, y, z) >= 0;
+    }
+
+    //The index of the block at this position, or -1 if it's outside the buffer
+    private int indexOf(int x, int y, int z) {
+        int localX = x - minX, localY = y - minY, localZ = z - minZ;
+        if (localX < 0 || localY < 0 || localZ < 0 || localX >= sizeX || localY >= sizeY || localZ >= sizeZ)
+            return -1;
+        int index = localX + sizeX * (localY + sizeY * localZ);
+        return index < size ? index : -1;
+    }
+
+    /**
+     * How many blocks use each palette entry, indexed the same as getPalette()
+     */
+    public int[] getPaletteCounts() {
+        int[] counts = new int[palette.size()];
+        for (int i = 0; i < size; i++)
+            counts[stateIndexes.applyAsInt(i)]++;
+        return counts;
+    }
+
+    /**
+     * Iterates the blocks in AABB order (x, then y, then z - same as BlockPos.betweenClosed) with a single reused mutable position
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * The same rotation StatePos.rotate90Degrees applies to a StatePos list (clockwise around Y, (x, y, z) -> (-z, y, x)), done on
+     * the packed data - the palette entries get rotated and the indexes moved to their new slots.
+     */
+    public BlockBuffer rotate90() {
+        if (isEmpty()) return this;
+        BlockPos newStart = new BlockPos(-start.getZ(), start.getY(), start.getX());
+        BlockPos newEnd = new BlockPos(-end.getZ(), end.getY(), end.getX());
+        ArrayList<BlockState> newPalette = new ArrayList<>(palette.size());
+        for (BlockState state : palette)
+            newPalette.add(state.rotate(Rotation.CLOCKWISE_90));
+        int[] newIndexes = new int[sizeX * sizeY * sizeZ]; //The new AABB is sizeZ wide and sizeX deep
+        for (int i = 0; i < size; i++) {
+            int localX = i % sizeX, localY = (i / sizeX) % sizeY, localZ = i / (sizeX * sizeY);
+            newIndexes[(sizeZ - 1 - localZ) + sizeZ * (localY + sizeY * localX)] = stateIndexes.applyAsInt(i);
+        }
+        SimpleBitStorage packedStates = new SimpleBitStorage(BG2Data.getPaletteBits(newPalette.size()), newIndexes.length, newIndexes);
+        return new BlockBuffer(newStart, newEnd, newPalette, packedStates::get, newIndexes.length);
+    }
+
+    /**
+     * Writes this back out in the same format as BG2Data.statePosListToNBTMapArray
+     */
+    public CompoundTag toNBT() {
+        CompoundTag tag = new CompoundTag();
+        if (isEmpty()) return tag;
+        int[] indexes = new int[size];
+        for (int i = 0; i < size; i++)
+            indexes[i] = stateIndexes.applyAsInt(i);
+        int bits = BG2Data.getPaletteBits(palette.size());
+        tag.putInt("version", BG2Data.COPY_FORMAT_VERSION);
+        tag.put("startpos", NbtUtils.writeBlockPos(start));
+        tag.put("endpos", NbtUtils.writeBlockPos(end));
+        tag.put("blockstatemap", StatePos.getBlockStateNBT(palette));
+        tag.putInt("bits", bits);
+        tag.putLongArray("packedstates", new SimpleBitStorage(bits, size, indexes).getRaw());
+        return tag;
+    }
+
+    /**
+     * Unpacks everything into a StatePos list, for code that still needs one
+     */
+    public ArrayList<StatePos> toStatePosList() {
+        ArrayList<StatePos> statePosList = new ArrayList<>(size);
+        Cursor cursor = cursor();
+        while (cursor.next())
+            statePosList.add(new StatePos(cursor.state(), cursor.pos().immutable()));
+        return statePosList;
+    }
+
+    public class Cursor {
+        private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        private int index = -1;
+        private BlockState state;
+
+        public boolean next() {
+            if (++index >= size) return false;
+            pos.set(minX + index % sizeX, minY + (index / sizeX) % sizeY, minZ + index / (sizeX * sizeY));
+            state = getState(index);
+            return true;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        /**
+         * Only valid until the next call to next() - call immutable() on it to keep it
+         */
+        public BlockPos.MutableBlockPos pos() {
+            return pos;
+        }
+
+        public BlockState state() {
+            return state;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.direwolf20.buildinggadgets2.util.datatypes;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * A block that's mid-animation in the construction overlay - growing in (placing) or shrinking away (removing). The size is worked out from
+ * the tick it started at, so both sides agree on when it finishes without syncing anything but the start.
+ */
+public class ConstructionPos {
+    public static final byte MAX_SIZE = 20; //Same as RenderBlockBE's grow animation
+    public final BlockState state;
+    public final BlockPos pos;
+    public final long startTick;
+    public final byte startSize;
+    public final boolean shrinking;
+    public CompoundTag blockEntityData; //Server side only, never synced
+
+    public ConstructionPos(BlockState state, BlockPos pos, long startTick, byte startSize, boolean shrinking) {
+        this.state = state;
+        this.pos = pos;
+        this.startTick = startTick;
+        this.startSize = startSize;
+        this.shrinking = shrinking;
+    }
+
+    /**
+     * Reads what getTag wrote, when the chunk it's in loads
+     */
+    public ConstructionPos(CompoundTag compoundTag) {
+        this.state = NbtUtils.readBlockState(BuiltInRegistries.BLOCK.asLookup(), compoundTag.getCompound("blockstate"));
+        this.pos = BlockPos.of(compoundTag.getLong("blockpos"));
+        this.startTick = compoundTag.getLong("starttick");
+        this.startSize = compoundTag.getByte("startsize");
+        this.shrinking = compoundTag.getBoolean("shrinking");
+        if (compoundTag.contains("blockentitydata"))
+            this.blockEntityData = compoundTag.getCompound("blockentitydata");
+    }
+
+    /**
+     * Saved with the chunk it's in - the state by name rather than id, since ids can change between runs
+     */
+    public CompoundTag getTag() {
+        CompoundTag compoundTag = new CompoundTag();
+        compoundTag.put("blockstate", NbtUtils.writeBlockState(state));
+        compoundTag.putLong("blockpos", pos.asLong());
+        compoundTag.putLong("starttick", startTick);
+        compoundTag.putByte("startsize", startSize);
+        compoundTag.putBoolean("shrinking", shrinking);
+        if (blockEntityData != null)
+            compoundTag.put("blockentitydata", blockEntityData);
+        return compoundTag;
+    }
+
+    public long getFinishTick() {
+        return startTick + (shrinking ? startSize : MAX_SIZE - startSize);
+    }
+
+    public byte getSize(long gameTime) {
+        return (byte) Mth.floor(getSize(gameTime, 0));
+    }
+
+    public float getSize(long gameTime, float partialTick) {
+        float elapsed = gameTime - startTick + partialTick;
+        return Mth.clamp(shrinking ? startSize - elapsed : startSize + elapsed, 0, MAX_SIZE);
+    }
+
+    public void encode(FriendlyByteBuf buf) {
+        buf.writeLong(pos.asLong());
+        buf.writeVarInt(Block.getId(state));
+        buf.writeVarLong(startTick);
+        buf.writeByte(startSize);
+        buf.writeBoolean(shrinking);
+    }
+
+    public static ConstructionPos decode(FriendlyByteBuf buf) {
+        BlockPos pos = BlockPos.of(buf.readLong());
+        BlockState state = Block.stateById(buf.readVarInt());
+        return new ConstructionPos(state, pos, buf.readVarLong(), buf.readByte(), buf.readBoolean());
+    }
+}
@@ -1,59 +1,182 @@
 package com.direwolf20.buildinggadgets2.util.datatypes;
 
+import com.direwolf20.buildinggadgets2.common.events.CopyDataStreamer;
 import com.direwolf20.buildinggadgets2.common.network.PacketHandler;
 import com.direwolf20.buildinggadgets2.common.network.packets.PacketSendPasteBatches;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.common.util.FakePlayer;
 
-import java.util.*;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
+/**
+ * Chunked transfer of a CompoundTag, used in both directions - PacketSendPasteBatches (client -> server) and PacketSendCopyData (server -> client,
+ * streamed by CopyDataStreamer).
+ * The tag is compressed once, then cut into slices of that one buffer (no copying), and the receiver stitches the chunks back together
+ * with a CompositeByteBuf (again without copying) before decompressing.
+ */
 public class PasteData {
+    public static final int SERVERBOUND_CHUNK_SIZE = 30000; //Forge caps serverbound custom payloads at 32767 bytes
+    public static final int CLIENTBOUND_CHUNK_SIZE = 65536; //Clientbound ones can go up to 1MB, but smaller chunks let CopyDataStreamer spread a transfer out
     private final int totalChunks;
-    private final Map<Integer, FriendlyByteBuf> receivedChunks = new HashMap<>();
+    private final ByteBuf[] receivedChunks;
+    private int receivedCount = 0;
 
     public PasteData(int totalChunks) {
         this.totalChunks = totalChunks;
+        this.receivedChunks = new ByteBuf[totalChunks];
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
     }
 
     public boolean isComplete() {
-        return receivedChunks.size() == totalChunks;
+        return receivedCount == totalChunks;
     }
 
-    public void addChunk(int position, FriendlyByteBuf chunk) {
-        receivedChunks.put(position, chunk);
+    /**
+     * Takes ownership of the chunk - it's released once assembled, or by release() if the transfer is abandoned
+     */
+    public void addChunk(int position, ByteBuf chunk) {
+        if (position < 0 || position >= totalChunks) {
+            chunk.release();
+            return;
+        }
+        if (receivedChunks[position] != null)
+            receivedChunks[position].release();
+        else
+            receivedCount++;
+        receivedChunks[position] = chunk;
     }
 
-    public FriendlyByteBuf assembleData() {
-        FriendlyByteBuf fullData = new FriendlyByteBuf(Unpooled.buffer());
-        for (int i = 0; i < totalChunks; i++) {
-            fullData.writeBytes(receivedChunks.get(i));
+    /**
+     * Reassembles and decompresses the tag - only call once isComplete() is true. Releases the chunks.
+     */
+    public CompoundTag assembleData() {
+        ByteBuf fullData = assemble();
+        try {
+            return decompress(fullData);
+        } finally {
+            fullData.release();
         }
+    }
+
+    /**
+     * Stitches the (still compressed) chunks together, handing them over to the returned buffer - the caller has to release it
+     */
+    public ByteBuf assemble() {
+        CompositeByteBuf fullData = Unpooled.compositeBuffer(totalChunks);
+        fullData.addComponents(true, receivedChunks);
+        Arrays.fill(receivedChunks, null);
+        receivedCount = 0;
         return fullData;
     }
 
-    public static List<FriendlyByteBuf> splitBuffer(FriendlyByteBuf buffer, int chunkSize) {
-        List<FriendlyByteBuf> chunks = new ArrayList<>();
+    public void release() {
+        for (int i = 0; i < totalChunks; i++) {
+            if (receivedChunks[i] != null) {
+                receivedChunks[i].release();
+                receivedChunks[i] = null;
+            }
+        }
+        receivedCount = 0;
+    }
 
-        while (buffer.readableBytes() > 0) {
-            int size = Math.min(buffer.readableBytes(), chunkSize);
-            FriendlyByteBuf chunkBuffer = new FriendlyByteBuf(Unpooled.buffer(size)); // Allocate buffer with the required size
-            buffer.readBytes(chunkBuffer, size);
-            chunks.add(chunkBuffer);
+    public static ByteBuf compress(CompoundTag tag) {
+        ByteBuf buffer = Unpooled.buffer();
+        try {
+            NbtIo.writeCompressed(tag, new ByteBufOutputStream(buffer));
+        } catch (IOException e) {
+            buffer.release();
+            throw new UncheckedIOException(e);
+        }
+        return buffer;
+    }
+
+    public static CompoundTag decompress(ByteBuf buffer) {
+        try {
+            return NbtIo.readCompressed(new ByteBufInputStream(buffer));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
+
+    /**
+     * Same as above, but gives up as soon as the decoded tag grows past maxBytes - so a tiny payload can't inflate into a huge tag
+     */
+    public static CompoundTag decompress(ByteBuf buffer, long maxBytes) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new ByteBufInputStream(buffer))))) {
+            return NbtIo.read(input, new NbtAccounter(maxBytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    /**
+     * Content hash of a compressed payload, used to tell whether the client's cached copy is still current. Doesn't move the reader index.
+     */
+    public static long hash(ByteBuf buffer) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (ByteBuffer nioBuffer : buffer.nioBuffers())
+            hasher.putBytes(nioBuffer);
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * Cuts the buffer into retained slices of at most chunkSize bytes, then releases the buffer itself - the slices keep it alive until they're released
+     */
+    public static List<ByteBuf> splitBuffer(ByteBuf buffer, int chunkSize) {
+        List<ByteBuf> chunks = new ArrayList<>();
+        while (buffer.isReadable()) {
+            int size = Math.min(buffer.readableBytes(), chunkSize);
+            chunks.add(buffer.readRetainedSlice(size));
+        }
+        buffer.release();
         return chunks;
     }
 
     public static void sendCompoundTag(CompoundTag tag) {
-        FriendlyByteBuf fullBuffer = new FriendlyByteBuf(Unpooled.buffer());
-        fullBuffer.writeNbt(tag);
-        List<FriendlyByteBuf> chunks = splitBuffer(fullBuffer, 30000); // Assuming 30,000 bytes as chunk size
+        List<ByteBuf> chunks = splitBuffer(compress(tag), SERVERBOUND_CHUNK_SIZE);
 
         UUID copyUUID = UUID.randomUUID();
         for (int i = 0; i < chunks.size(); i++) {
             PacketSendPasteBatches packet = new PacketSendPasteBatches(copyUUID, chunks.size(), i, chunks.get(i));
-            PacketHandler.sendToServer(packet); // You might need to adjust this based on your packet handling mechanism
+            PacketHandler.sendToServer(packet); //Encoded right away, so the slice can be released once it's sent
+            chunks.get(i).release();
+        }
+    }
+
+    public static void sendCopyData(ServerPlayer player, UUID gadgetUUID, UUID copyUUID, CompoundTag tag) {
+        sendCopyData(player, gadgetUUID, copyUUID, compress(tag));
+    }
+
+    /**
+     * Queues an already compressed payload to be streamed to the player by CopyDataStreamer, and takes ownership of it
+     */
+    public static void sendCopyData(ServerPlayer player, UUID gadgetUUID, UUID copyUUID, ByteBuf payload) {
+        if (player instanceof FakePlayer) { //Nobody on the other end to acknowledge anything
+            payload.release();
+            return;
         }
+        CopyDataStreamer.queue(player, gadgetUUID, copyUUID, splitBuffer(payload, CLIENTBOUND_CHUNK_SIZE));
     }
 }
@@ -3,6 +3,7 @@ package com.direwolf20.buildinggadgets2.util.datatypes;
 import com.direwolf20.buildinggadgets2.util.GadgetUtils;
 import com.direwolf20.buildinggadgets2.util.ItemStackKey;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.registries.BuiltInRegistries;
@@ -63,8 +64,9 @@ public class StatePos {
 
     public static ArrayList<BlockState> getBlockStateMap(ArrayList<StatePos> list) {
         ArrayList<BlockState> blockStateMap = new ArrayList<>();
+        ReferenceOpenHashSet<BlockState> seen = new ReferenceOpenHashSet<>();
         for (StatePos statePos : list) {
-            if (!blockStateMap.contains(statePos.state))
+            if (seen.add(statePos.state))
                 blockStateMap.add(statePos.state);
         }
         return blockStateMap;
@@ -120,6 +122,24 @@ public class StatePos {
         return itemList;
     }
 
+    /**
+     * Same as above, but counts per palette entry so we only look up the item once per distinct state
+     */
+    @OnlyIn(Dist.CLIENT)
+    public static Map<ItemStackKey, Integer> getItemList(BlockBuffer blockBuffer) {
+        Map<ItemStackKey, Integer> itemList = new Object2IntOpenHashMap<>();
+        if (blockBuffer == null || blockBuffer.isEmpty())
+            return itemList;
+        ArrayList<BlockState> palette = blockBuffer.getPalette();
+        int[] counts = blockBuffer.getPaletteCounts();
+        for (int i = 0; i < palette.size(); i++) {
+            if (counts[i] == 0) continue;
+            ItemStackKey itemStackKey = new ItemStackKey(GadgetUtils.getItemForBlock(palette.get(i), Minecraft.getInstance().level, BlockPos.ZERO, Minecraft.getInstance().player), true);
+            itemList.merge(itemStackKey, counts[i], Integer::sum);
+        }
+        return itemList;
+    }
+
     public static ListTag getBlockStateNBT(ArrayList<BlockState> blockStateMap) {
         ListTag listTag = new ListTag();
         for (BlockState blockState : blockStateMap) {
@@ -0,0 +1,88 @@
+package com.direwolf20.buildinggadgets2.util.datatypes;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.function.Consumer;
+
+/**
+ * FIFO queue of StatePos backed by primitive arrays - positions are stored packed (BlockPos.asLong) and states by their registry id.
+ * Polling just moves a cursor forward, so both dequeuing and appending (for retries) are O(1).
+ */
+public class StatePosQueue {
+    private long[] positions;
+    private int[] states;
+    private int head = 0;
+    private int tail = 0;
+
+    public StatePosQueue() {
+        this(16);
+    }
+
+    public StatePosQueue(int initialCapacity) {
+        this.positions = new long[Math.max(initialCapacity, 1)];
+        this.states = new int[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(StatePos statePos) {
+        add(statePos.state, statePos.pos);
+    }
+
+    public void add(BlockState state, BlockPos pos) {
+        if (tail == positions.length)
+            makeRoom();
+        positions[tail] = pos.asLong();
+        states[tail] = Block.getId(state);
+        tail++;
+    }
+
+    /**
+     * Removes and returns the next entry, or null if the queue is empty
+     */
+    public StatePos poll() {
+        if (isEmpty()) return null;
+        StatePos statePos = new StatePos(Block.stateById(states[head]), BlockPos.of(positions[head]));
+        head++;
+        if (head == tail) //Reset the cursor once drained, so the arrays get reused from the start
+            head = tail = 0;
+        return statePos;
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    public int size() {
+        return tail - head;
+    }
+
+    public void clear() {
+        head = tail = 0;
+    }
+
+    public void forEach(Consumer<StatePos> consumer) {
+        for (int i = head; i < tail; i++)
+            consumer.accept(new StatePos(Block.stateById(states[i]), BlockPos.of(positions[i])));
+    }
+
+    /**
+     * Called when the tail hits the end of the arrays - reclaim the already consumed front if that frees up enough space, otherwise grow
+     */
+    private void makeRoom() {
+        int size = size();
+        if (head > 0 && size < positions.length / 2) {
+            System.arraycopy(positions, head, positions, 0, size);
+            System.arraycopy(states, head, states, 0, size);
+        } else {
+            long[] newPositions = new long[positions.length * 2];
+            int[] newStates = new int[states.length * 2];
+            System.arraycopy(positions, head, newPositions, 0, size);
+            System.arraycopy(states, head, newStates, 0, size);
+            positions = newPositions;
+            states = newStates;
+        }
+        head = 0;
+        tail = size;
+    }
+}
@@ -9,7 +9,10 @@ import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.nbt.Tag;
 import net.minecraft.nbt.TagParser;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.level.block.state.BlockState;
@@ -35,24 +38,27 @@ public class Template {
         }
     }
 
+    /**
+     * Swaps every sourceState for targetState. Copy data is a palette plus per-block indexes into it, so only the palette needs to change.
+     */
     public void replaceBlocks(BlockState sourceState, BlockState targetState) {
         if (statePosArrayList == null || statePosArrayList.equals("")) return;
-        ArrayList<StatePos> statePosList = new ArrayList<>();
+        CompoundTag deserializedNBT;
 
         try {
-            CompoundTag deserializedNBT = TagParser.parseTag(this.statePosArrayList);
-            statePosList = BG2Data.statePosListFromNBTMapArray(deserializedNBT);
+            deserializedNBT = TagParser.parseTag(this.statePosArrayList);
         } catch (Exception e) {
             return;
         }
 
-        if (statePosList.isEmpty()) return;
-
-        for (StatePos statePos : statePosList) {
-            if (statePos.state.equals(sourceState))
-                statePos.state = targetState;
+        if (!deserializedNBT.contains("blockstatemap")) return;
+        ListTag paletteTag = deserializedNBT.getList("blockstatemap", Tag.TAG_COMPOUND);
+        ArrayList<BlockState> palette = StatePos.getBlockStateMapFromNBT(paletteTag);
+        for (int i = 0; i < palette.size(); i++) {
+            if (palette.get(i).equals(sourceState))
+                paletteTag.set(i, NbtUtils.writeBlockState(targetState));
         }
-        this.statePosArrayList = BG2Data.statePosListToNBTMapArray(statePosList).toString();
+        this.statePosArrayList = deserializedNBT.toString();
     }
 
     public Template(String json) {